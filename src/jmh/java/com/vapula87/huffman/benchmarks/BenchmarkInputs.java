@@ -0,0 +1,107 @@
+package com.vapula87.huffman.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import com.vapula87.huffman.compressor.HuffmanCodec;
+import com.vapula87.huffman.interfaces.Entry;
+import com.vapula87.huffman.structures.ITreeMaker;
+/**
+ * Deterministic benchmark inputs shared by all benchmarks.<br><br>
+ *
+ * text: English-like words and punctuation.<br>
+ * binary: fixed-size records of counters, small integers and timestamps.<br>
+ * skewed: geometrically distributed bytes (a few symbols dominate).<br>
+ * random: uniformly random bytes (incompressible).
+ *
+ * @author Michael Hackett
+ */
+public class BenchmarkInputs {
+	private static final String[] 	WORDS = { "the", "of", "and", "to", "in", "a", "is", "that", "for", "it",
+		"huffman", "tree", "code", "byte", "file", "compress", "stream", "block", "table", "symbol" };
+	private BenchmarkInputs() { }
+	/**
+	 * Generates size bytes of the given kind, always the same for the same arguments.
+	 * @param kind (String) text, binary, skewed or random
+	 * @param size (int)
+	 * @return (byte[])
+	 */
+	public static byte[] generate(String kind, int size) {
+		Random random = new Random(42);
+		byte[] data = new byte[size];
+		switch (kind) {
+			case "text":
+				for (int w = 0; w < size; ) {
+					String word = WORDS[Math.min(WORDS.length - 1, (int) (-Math.log(random.nextDouble()) * 4))];
+					for (int c = 0; c < word.length() && w < size; c++) data[w++] = (byte) word.charAt(c);
+					if (w < size) data[w++] = (byte) (random.nextInt(12) == 0 ? '\n' : random.nextInt(10) == 0 ? ',' : ' ');
+				}
+				break;
+			case "binary":
+				long time = 1600000000000L;
+				for (int w = 0, id = 0; w + 16 <= size; w += 16, id++) {
+					time += random.nextInt(1000);
+					for (int b = 0; b < 4; b++) data[w + b] = (byte) (id >>> (8 * b));
+					for (int b = 0; b < 4; b++) data[w + 4 + b] = (byte) (b == 0 ? random.nextInt(100) : 0);
+					for (int b = 0; b < 8; b++) data[w + 8 + b] = (byte) (time >>> (8 * b));
+				}
+				break;
+			case "skewed":
+				for (int w = 0; w < size; w++) data[w] = (byte) Math.min(255, (int) (-Math.log(random.nextDouble()) / 0.7));
+				break;
+			case "random":
+				random.nextBytes(data);
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown input kind " + kind);
+		}
+		return data;
+	}
+	/**
+	 * Writes the data to a temporary file that is deleted on exit.
+	 * @param data (byte[])
+	 * @return (Path)
+	 * @throws IOException
+	 */
+	public static Path writeTemp(byte[] data) throws IOException {
+		Path file = Files.createTempFile("huffman-bench", ".bin");
+		file.toFile().deleteOnExit();
+		Files.write(file, data);
+		return file;
+	}
+	/**
+	 * Counts every byte value.
+	 * @param data (byte[])
+	 * @return (int[])
+	 */
+	public static int[] counts(byte[] data) {
+		int[] counts = new int[HuffmanCodec.MAX_COUNT];
+		for (byte b : data) counts[b & 0xFF]++;
+		return counts;
+	}
+	/**
+	 * Serializes a tree the way the legacy .huff header does and rebuilds it through the
+	 * decompressor's ITreeMaker, so the result is ready for {@link com.vapula87.huffman.structures.HuffTree#mapBit}.
+	 * @param source (ITreeMaker)
+	 * @return (ITreeMaker)
+	 */
+	public static ITreeMaker rebuild(ITreeMaker source) {
+		ITreeMaker rebuilt = new ITreeMaker();
+		int items = 0;
+		for (Entry<Integer, Integer> node : source.getTree()) {
+			if (node.getValue() == null) items += rebuilt.addStack(0);
+			else {
+				rebuilt.addStack(1);
+				for (int w = HuffmanCodec.BITS_PER_WORD - 1; w >= 0; w--) items += rebuilt.addStack((node.getValue() >>> w) & 1);
+			}
+		}
+		while (items < HuffmanCodec.MAX_ITEMS) items += rebuilt.addStack(0);
+		rebuilt.resize();
+		rebuilt.reStack();
+		rebuilt.rebuild();
+		rebuilt.getTree().encode(null);
+		return rebuilt;
+	}
+}
@@ -0,0 +1,55 @@
+package com.vapula87.huffman.benchmarks;
+
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import com.vapula87.huffman.compressor.FrequencyCounter;
+import com.vapula87.huffman.compressor.HuffmanCodec;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+/**
+ * First pass: counting byte frequencies of a file.
+ *
+ * @author Michael Hackett
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class CountingBenchmark {
+	@Param({ "text", "binary", "skewed", "random" })
+	public String 	kind;
+	@Param({ "65536", "1048576", "16777216" })
+	public int 		size;
+	private Path 	file;
+	@Setup
+	public void setup() throws IOException { file = BenchmarkInputs.writeTemp(BenchmarkInputs.generate(kind, size)); }
+	/**
+	 * The codec's counting stage (memory-mapped, parallel slices).
+	 */
+	@Benchmark
+	public long[] frequencyCounter() throws IOException {
+		return new FrequencyCounter(ForkJoinPool.commonPool()).count(file);
+	}
+	/**
+	 * The original single-byte BufferedInputStream loop, as a baseline.
+	 */
+	@Benchmark
+	public int[] bufferedStream() throws IOException {
+		int[] counts = new int[HuffmanCodec.MAX_COUNT];
+		int bytes;
+		try (BufferedInputStream in = new BufferedInputStream(new FileInputStream(file.toFile()))) {
+			while ((bytes = in.read()) != -1) counts[bytes]++;
+		}
+		return counts;
+	}
+}
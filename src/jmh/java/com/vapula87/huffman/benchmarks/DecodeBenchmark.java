@@ -0,0 +1,88 @@
+package com.vapula87.huffman.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import com.vapula87.huffman.compressor.HuffmanCodec;
+import com.vapula87.huffman.structures.CodeTable;
+import com.vapula87.huffman.structures.DecodeTable;
+import com.vapula87.huffman.structures.FlatDecodeTree;
+import com.vapula87.huffman.structures.HuffTree;
+import com.vapula87.huffman.structures.ITreeMaker;
+import com.vapula87.huffman.utilities.BitReader;
+import com.vapula87.huffman.utilities.BitWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+/**
+ * Decoding a pre-encoded payload back into bytes.
+ *
+ * @author Michael Hackett
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class DecodeBenchmark {
+	@Param({ "text", "binary", "skewed", "random" })
+	public String 		kind;
+	@Param({ "65536", "1048576", "16777216" })
+	public int 			size;
+	private byte[] 		encoded, decoded;
+	private ITreeMaker 	tree;
+	private DecodeTable table;
+	private FlatDecodeTree flat;
+	@Setup
+	public void setup() throws IOException {
+		byte[] data = BenchmarkInputs.generate(kind, size);
+		tree = BenchmarkInputs.rebuild(new ITreeMaker(BenchmarkInputs.counts(data)));
+		CodeTable codes = CodeTable.fromMap(tree.getTree().getMap(), HuffmanCodec.PSEUDO_EOF + 1);
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		BitWriter writer = new BitWriter(bytes);
+		for (byte b : data) writer.write(codes.getCode(b & 0xFF), codes.getLength(b & 0xFF));
+		writer.flush();
+		encoded = bytes.toByteArray();
+		decoded = new byte[size];
+		table = new DecodeTable(codes);
+		flat = new FlatDecodeTree(codes);
+	}
+	/**
+	 * The original decoder: one HuffTree.mapBit call per bit.
+	 */
+	@Benchmark
+	public byte[] mapBit() {
+		HuffTree<?> huffTree = tree.getTree();
+		int out = 0;
+		for (int i = 0; i < encoded.length && out < decoded.length; i++) {
+			for (int w = HuffmanCodec.BITS_PER_WORD - 1; w >= 0 && out < decoded.length; w--) {
+				int symbol = huffTree.mapBit((encoded[i] >>> w) & 1);
+				if (symbol > -1) decoded[out++] = (byte) symbol;
+			}
+		}
+		return decoded;
+	}
+	/**
+	 * The flat array tree, one array step per bit with no objects.
+	 */
+	@Benchmark
+	public byte[] flatTree() throws IOException {
+		BitReader reader = new BitReader(new ByteArrayInputStream(encoded));
+		for (int out = 0; out < decoded.length; out++) decoded[out] = (byte) flat.decode(reader);
+		return decoded;
+	}
+	/**
+	 * The codec's decoder: 64-bit bit reader and two-level lookup table.
+	 */
+	@Benchmark
+	public byte[] decodeTable() throws IOException {
+		BitReader reader = new BitReader(new ByteArrayInputStream(encoded));
+		for (int out = 0; out < decoded.length; out++) decoded[out] = (byte) table.decode(reader);
+		return decoded;
+	}
+}
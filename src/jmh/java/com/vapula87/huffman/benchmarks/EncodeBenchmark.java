@@ -0,0 +1,106 @@
+package com.vapula87.huffman.benchmarks;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+import com.vapula87.huffman.compressor.HuffmanCodec;
+import com.vapula87.huffman.structures.CodeTable;
+import com.vapula87.huffman.structures.ITreeMaker;
+import com.vapula87.huffman.structures.SortedTableMap;
+import com.vapula87.huffman.utilities.BitWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+/**
+ * The per-byte encode loop, with the bits discarded after packing.
+ *
+ * @author Michael Hackett
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class EncodeBenchmark {
+	@Param({ "text", "binary", "skewed", "random" })
+	public String 							kind;
+	@Param({ "65536", "1048576", "16777216" })
+	public int 								size;
+	private byte[] 							data;
+	private SortedTableMap<Integer, String> map;
+	private CodeTable 						table;
+	@Setup
+	public void setup() {
+		data = BenchmarkInputs.generate(kind, size);
+		ITreeMaker tree = new ITreeMaker(BenchmarkInputs.counts(data));
+		tree.getTree().encode(null);
+		map = tree.getTree().getMap();
+		table = CodeTable.fromMap(map, HuffmanCodec.PSEUDO_EOF + 1);
+	}
+	/**
+	 * The codec's loop: primitive code table and word-level bit writer.
+	 */
+	@Benchmark
+	public long codeTable() throws IOException {
+		BitWriter writer = new BitWriter(OutputStream.nullOutputStream());
+		long[] codes = table.getCodes();
+		int[] lengths = table.getLengths();
+		for (byte b : data) writer.write(codes[b & 0xFF], lengths[b & 0xFF]);
+		writer.flush();
+		return writer.getBytesWritten();
+	}
+	/**
+	 * The original loop: map lookup per byte, one bit at a time into a byte buffer, and the
+	 * progress arithmetic that ran for every byte.
+	 */
+	@Benchmark
+	public long mapStrings() throws IOException {
+		LegacyWriter writer = new LegacyWriter(new BufferedOutputStream(OutputStream.nullOutputStream()));
+		long total = 0;
+		int last = 0;
+		double percentage;
+		for (byte b : data) {
+			String code = map.get(b & 0xFF);
+			for (int w = 0; w < code.length(); w++) writer.addBuff((byte) (code.charAt(w) - 48));
+			total++;
+			percentage = (double) total / data.length;
+			percentage *= 100;
+			percentage = Math.floor(percentage);
+			if (percentage != last) last = (int) percentage;
+		}
+		writer.flushBuff();
+		return writer.bytes + last;
+	}
+	/**
+	 * The bit packing of the original controller (addBuff and flushBuff), kept here as the baseline.
+	 */
+	private static class LegacyWriter {
+		private final BufferedOutputStream 	buffWrite;
+		private int 						storeBit = 0, bitLoc = 0;
+		private long 						bytes = 0;
+		private LegacyWriter(BufferedOutputStream buffWrite) { this.buffWrite = buffWrite; }
+		private void addBuff(byte b) throws IOException {
+			storeBit += b;
+			if (bitLoc == HuffmanCodec.BITS_PER_WORD - 1) {
+				buffWrite.write(storeBit);
+				bytes++;
+				bitLoc = storeBit = 0;
+				return;
+			}
+			storeBit <<= 1;
+			bitLoc++;
+		}
+		private void flushBuff() throws IOException {
+			while (bitLoc < HuffmanCodec.BITS_PER_WORD) {
+				if (bitLoc == 0) break;
+				addBuff((byte) 0);
+			}
+			buffWrite.close();
+		}
+	}
+}
@@ -0,0 +1,51 @@
+package com.vapula87.huffman.benchmarks;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import com.vapula87.huffman.compressor.HuffmanCodec;
+import com.vapula87.huffman.structures.CodeLengthBuilder;
+import com.vapula87.huffman.structures.ITreeMaker;
+import com.vapula87.huffman.structures.SortedTableMap;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+/**
+ * Table construction: building the Huffman tree from counts and walking it for codes.
+ *
+ * @author Michael Hackett
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TreeBenchmark {
+	@Param({ "text", "binary", "skewed", "random" })
+	public String 		kind;
+	@Param({ "65536", "1048576" })
+	public int 			size;
+	private int[] 		counts, weights, lengths;
+	private ITreeMaker 	tree;
+	private final CodeLengthBuilder builder = new CodeLengthBuilder(HuffmanCodec.PSEUDO_EOF + 1);
+	@Setup
+	public void setup() {
+		counts = BenchmarkInputs.counts(BenchmarkInputs.generate(kind, size));
+		tree = new ITreeMaker(counts);
+		weights = Arrays.copyOf(counts, HuffmanCodec.PSEUDO_EOF + 1);
+		weights[HuffmanCodec.PSEUDO_EOF] = 1;
+		lengths = new int[weights.length];
+	}
+	@Benchmark
+	public ITreeMaker treeMaker() { return new ITreeMaker(counts); }
+	@Benchmark
+	public int[] codeLengthBuilder() { return builder.build(weights, lengths); }
+	@Benchmark
+	public SortedTableMap<Integer, String> huffTreeEncode() {
+		tree.getTree().encode(null);
+		return tree.getTree().getMap();
+	}
+}
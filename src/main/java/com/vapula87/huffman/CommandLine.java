@@ -0,0 +1,255 @@
+package com.vapula87.huffman;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Supplier;
+
+import com.vapula87.huffman.compressor.BatchCodec;
+import com.vapula87.huffman.compressor.BlockCodec;
+import com.vapula87.huffman.compressor.CompressibilityEstimator;
+import com.vapula87.huffman.compressor.HuffmanCodec;
+import com.vapula87.huffman.compressor.Lz77Model;
+import com.vapula87.huffman.compressor.TableRegistry;
+import com.vapula87.huffman.compressor.TransformPipeline;
+import com.vapula87.huffman.interfaces.IProgressListener;
+import com.vapula87.huffman.utilities.BitReader;
+/**
+ * Headless command-line entry point. Never touches the JavaFX toolkit.<br><br>
+ *
+ * Usage: <code>compress|decompress [-f] [-v] [-p] [-r] [-e] [--legacy | -b | -s | -a | --table id] [--tables dir] [-c] [-w] [-z level [--window bits]] [-x rle,bwt,mtf] [-t threads] [-l maxbits] &lt;input&gt; [output]</code><br>
+ * An input or output of <code>-</code> means stdin or stdout; compressing a stream needs -b, -s or -a.
+ * An output file that already exists is refused unless -f is given, and never when it is the input itself.
+ * -c, -w and -z let the block formats use an order-1 context model, 16-bit symbols and LZ77 at the
+ * given level (1-9), and -x runs the listed transforms on each block first. -v reports how full the
+ * read and write queues around the coder were, which shows whether the disk or the coding is the bottleneck,
+ * and the time spent in each phase. -p shows progress on stderr, or the bytes done when reading stdin.<br>
+ * -r codes every file under the input directory, mirroring the tree into the output directory if one
+ * is given, and reports the total throughput. It uses the block format unless another is chosen. -e skips
+ * files there that a few samples show will not shrink.<br>
+ * <code>train [--tables dir] &lt;corpus&gt;</code> registers a table trained on every file under the corpus and
+ * prints its ID; --table id then compresses in the shared format, which stores only that ID.
+ *
+ * @author Michael Hackett
+ */
+public class CommandLine {
+    private static final Path STDIO = Path.of("-");
+
+    public static void main(String[] args) {
+        System.exit(run(args));
+    }
+    /**
+     * Runs a single command and returns the process exit status.
+     * @param args (String[])
+     * @return (int)
+     */
+    public static int run(String[] args) {
+        boolean forced = false, verbose = false, recursive = false, skip = false, showProgress = false;
+        int format = -1, threads = 0, maxBits = 0, models = 0, transforms = 0, level = 0, windowBits = Lz77Model.DEFAULT_WINDOW_BITS, tableId = 0;
+        TableRegistry registry = TableRegistry.getDefault();
+        String command = null;
+        Path in = null, out = null;
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (arg.equals("-f")) forced = true;
+            else if (arg.equals("-v")) verbose = true;
+            else if (arg.equals("-p")) showProgress = true;
+            else if (arg.equals("-r")) recursive = true;
+            else if (arg.equals("-e")) skip = true;
+            else if (arg.equals("--legacy")) format = HuffmanCodec.FORMAT_LEGACY;
+            else if (arg.equals("-b")) format = HuffmanCodec.FORMAT_BLOCK;
+            else if (arg.equals("-a")) format = HuffmanCodec.FORMAT_ADAPTIVE;
+            else if (arg.equals("-s")) format = HuffmanCodec.FORMAT_INDEXED;
+            else if (arg.equals("-c")) models |= BlockCodec.TRY_ORDER1;
+            else if (arg.equals("-w")) models |= BlockCodec.TRY_WIDE;
+            else if (arg.equals("-z") && i + 1 < args.length) {
+                try { level = Integer.parseInt(args[++i]); }
+                catch (NumberFormatException e) { return usage(); }
+                if (level < 1 || level > Lz77Model.MAX_LEVEL) return usage();
+            }
+            else if (arg.equals("--window") && i + 1 < args.length) {
+                try { windowBits = Integer.parseInt(args[++i]); }
+                catch (NumberFormatException e) { return usage(); }
+                if (windowBits < Lz77Model.MIN_WINDOW_BITS || windowBits > Lz77Model.MAX_WINDOW_BITS) return usage();
+            }
+            else if (arg.equals("--table") && i + 1 < args.length) {
+                try { tableId = TableRegistry.parse(args[++i]); }
+                catch (NumberFormatException e) { return usage(); }
+                format = HuffmanCodec.FORMAT_SHARED;
+            }
+            else if (arg.equals("--tables") && i + 1 < args.length) registry = new TableRegistry(Path.of(args[++i]));
+            else if (arg.equals("-x") && i + 1 < args.length) {
+                try { transforms = TransformPipeline.parse(args[++i]); }
+                catch (IllegalArgumentException e) { return usage(); }
+            }
+            else if (arg.equals("-t") && i + 1 < args.length) {
+                try { threads = Integer.parseInt(args[++i]); }
+                catch (NumberFormatException e) { return usage(); }
+                if (threads < 1) return usage();
+            }
+            else if (arg.equals("-l") && i + 1 < args.length) {
+                try { maxBits = Integer.parseInt(args[++i]); }
+                catch (NumberFormatException e) { return usage(); }
+                if (maxBits < 1 || maxBits > BitReader.MAX_PEEK) return usage();
+            }
+            else if (command == null) command = arg;
+            else if (arg.equals("-") && in == null) in = STDIO;
+            else if (arg.equals("-") && out == null) out = STDIO;
+            else if (in == null) in = Path.of(arg);
+            else if (out == null) out = Path.of(arg);
+            else return usage();
+        }
+        if (command == null || in == null) return usage();
+        if (command.equals("train")) return train(registry, in);
+        if (level > 0) models |= BlockCodec.lz77(level, windowBits);
+        if (format < 0) format = recursive ? HuffmanCodec.FORMAT_BLOCK : HuffmanCodec.FORMAT_CANONICAL;
+        ForkJoinPool pool = threads > 0 ? new ForkJoinPool(threads) : ForkJoinPool.commonPool();
+        boolean force = forced;
+        int fileFormat = format, limit = maxBits, blockModels = models, blockTransforms = transforms, table = tableId;
+        TableRegistry tables = registry;
+        Supplier<HuffmanCodec> codecs = () -> {
+            HuffmanCodec codec = new HuffmanCodec();
+            codec.setForced(force);
+            codec.setFormat(fileFormat);
+            codec.setMaxCodeLength(limit);
+            codec.setModels(blockModels);
+            codec.setTransforms(blockTransforms);
+            codec.setTable(table);
+            codec.setRegistry(tables);
+            codec.setPool(pool);
+            return codec;
+        };
+        if (recursive) {
+            BatchCodec batch = new BatchCodec(pool, codecs);
+            if (skip) batch.setEstimator(new CompressibilityEstimator());
+            return runBatch(batch, command, in, out);
+        }
+        HuffmanCodec codec = codecs.get();
+        ConsoleProgress console = new ConsoleProgress();
+        if (showProgress) codec.setListener(console);
+        if (in == STDIO || out == STDIO) return runStream(codec, command, in, out, console);
+        try {
+            long start = System.nanoTime();
+            if (command.equals("compress")) {
+                if (out == null) out = codec.compress(in);
+                else codec.compress(in, out);
+            }
+            else if (command.equals("decompress")) {
+                if (out == null) out = codec.decompress(in);
+                else codec.decompress(in, out);
+            }
+            else return usage();
+            console.clear();
+            long millis = (System.nanoTime() - start) / 1000000;
+            System.out.println(in + " (" + Files.size(in) + " bytes) -> " + out + " (" + Files.size(out) + " bytes) in " + millis + " ms" + limitStats(codec));
+            if (verbose) {
+                if (codec.getEstimate() != null) System.out.println("estimate: " + codec.getEstimate());
+                System.out.println("read queue: " + codec.getReadQueue());
+                System.out.println("write queue: " + codec.getWriteQueue());
+                System.out.println(codec.getMetrics());
+            }
+            return 0;
+        }
+        catch (IOException e) {
+            console.clear();
+            System.err.println(e.getMessage());
+            return 1;
+        }
+    }
+    /**
+     * Trains and registers a shared table on the corpus and prints its ID.
+     */
+    private static int train(TableRegistry registry, Path corpus) {
+        try {
+            int id = registry.train(corpus);
+            System.out.println("Table " + TableRegistry.name(id) + " registered in " + registry.getDirectory());
+            return 0;
+        }
+        catch (IOException e) {
+            System.err.println(e.getMessage());
+            return 1;
+        }
+    }
+    /**
+     * Runs a command over every file under a directory and prints the totals.
+     */
+    private static int runBatch(BatchCodec batch, String command, Path in, Path out) {
+        if (!Files.isDirectory(in) || in == STDIO || out == STDIO) return usage();
+        try {
+            BatchCodec.Result result;
+            if (command.equals("compress")) result = batch.compress(in, out);
+            else if (command.equals("decompress")) result = batch.decompress(in, out);
+            else return usage();
+            for (String failure : batch.getFailures()) System.err.println(failure);
+            System.out.println(result);
+            return result.getFailed() == 0 ? 0 : 1;
+        }
+        catch (IOException e) {
+            System.err.println(e.getMessage());
+            return 1;
+        }
+    }
+    /**
+     * Runs a command with stdin or stdout in place of a file. The summary goes to stderr.
+     */
+    private static int runStream(HuffmanCodec codec, String command, Path in, Path out, ConsoleProgress console) {
+        if (out == null) out = STDIO;
+        if (!command.equals("compress") && !command.equals("decompress")) return usage();
+        long start = System.nanoTime();
+        try (InputStream input = in == STDIO ? System.in : HuffmanCodec.openInput(in);
+             OutputStream output = out == STDIO ? System.out : HuffmanCodec.openOutput(out)) {
+            if (command.equals("compress")) codec.compress(input, output, in == STDIO ? "" : HuffmanCodec.extension(in));
+            else codec.decompress(input, output);
+            output.flush();
+        }
+        catch (IOException e) {
+            console.clear();
+            System.err.println(e.getMessage());
+            return 1;
+        }
+        console.clear();
+        long millis = (System.nanoTime() - start) / 1000000;
+        System.err.println((in == STDIO ? "stdin" : in) + " -> " + (out == STDIO ? "stdout" : out) + " in " + millis + " ms" + limitStats(codec));
+        return 0;
+    }
+    /**
+     * Describes the cost of the code length limit, if one was set.
+     */
+    private static String limitStats(HuffmanCodec codec) {
+        if (codec.getMaxCodeLength() == 0) return "";
+        return String.format(", codes <= %d bits (+%.4f%% coded size)", codec.getMaxCodeLength(), codec.getLimitLoss() * 100);
+    }
+    /**
+     * Shows progress on stderr as a percentage, or as a spinner with the bytes done when the total is unknown.
+     */
+    private static class ConsoleProgress implements IProgressListener {
+        private static final String SPINNER = "|/-\\";
+        private int turn = 0;
+        private boolean shown = false;
+
+        @Override
+        public void update(double fraction) {
+            System.err.printf("\r%3d%%", (int) (fraction * 100));
+            shown = true;
+        }
+        @Override
+        public void update(long done, long total) {
+            if (total > 0) update(Math.min(1.0, (double) done / total));
+            else {
+                System.err.printf("\r%c %d MB", SPINNER.charAt(turn++ % SPINNER.length()), done >> 20);
+                shown = true;
+            }
+        }
+        private void clear() {
+            if (shown) System.err.print("\r                \r");
+            shown = false;
+        }
+    }
+    private static int usage() {
+        System.err.println("Usage: compress|decompress [-f] [-v] [-p] [-r] [-e] [--legacy | -b | -s | -a | --table id] [--tables dir] [-c] [-w] [-z level [--window bits]] [-x rle,bwt,mtf] [-t threads] [-l maxbits] <input> [output]");
+        System.err.println("       train [--tables dir] <corpus>");
+        return 2;
+    }
+}
@@ -2,11 +2,13 @@ package com.vapula87.huffman;
 import com.vapula87.huffman.compressor.Main;
 /**
  * Required launcher class for properly packaging JavaFX project.
+ * Any arguments run the headless command line instead of the GUI.
  */
 
 public class Launcher {
 
     public static void main(String[] args) {
-        Main.main(args);
+        if (args.length > 0) CommandLine.main(args);
+        else Main.main(args);
     }
 }
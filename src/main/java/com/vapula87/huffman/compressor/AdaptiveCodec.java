@@ -0,0 +1,75 @@
+package com.vapula87.huffman.compressor;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import com.vapula87.huffman.structures.AdaptiveHuffTree;
+import com.vapula87.huffman.utilities.BitReader;
+import com.vapula87.huffman.utilities.BitWriter;
+import com.vapula87.huffman.utilities.ProgressCounter;
+/**
+ * Single-pass adaptive Huffman coding.<br><br>
+ *
+ * The input is read once and coded through an {@link AdaptiveHuffTree} that learns the byte
+ * frequencies as it goes, so streams of unknown length (pipes, sockets) can be compressed
+ * without a counting pass and with memory bounded by the alphabet.<br>
+ * Stream layout: the coded bytes followed by the coded PSEUDO_EOF.
+ *
+ * @author Michael Hackett
+ */
+public class AdaptiveCodec {
+	private ProgressCounter 	progress;
+	/**
+	 * Compresses the stream until it ends.
+	 *
+	 * @param in (InputStream)
+	 * @param writer (BitWriter)
+	 * @return (long) uncompressed bytes read
+	 * @throws IOException
+	 */
+	public long compress(InputStream in, BitWriter writer) throws IOException {
+		AdaptiveHuffTree tree = new AdaptiveHuffTree(HuffmanCodec.PSEUDO_EOF + 1);
+		byte[] block = new byte[1 << 16];
+		long read = 0;
+		int bytes;
+		while ((bytes = in.read(block)) != -1) {
+			for (int w = 0; w < bytes; w++) tree.encode(block[w] & 0xFF, writer);
+			read += bytes;
+			if (progress != null) progress.set(read);
+		}
+		tree.encode(HuffmanCodec.PSEUDO_EOF, writer);
+		return read;
+	}
+	/**
+	 * Decompresses a stream written by {@link #compress} up to its PSEUDO_EOF.
+	 *
+	 * @param reader (BitReader)
+	 * @param out (OutputStream)
+	 * @return (long) uncompressed bytes written
+	 * @throws IOException
+	 */
+	public long decompress(BitReader reader, OutputStream out) throws IOException {
+		AdaptiveHuffTree tree = new AdaptiveHuffTree(HuffmanCodec.PSEUDO_EOF + 1);
+		byte[] block = new byte[1 << 16];
+		long written = 0;
+		int ascii, used = 0;
+		while ((ascii = tree.decode(reader)) != HuffmanCodec.PSEUDO_EOF) {
+			block[used++] = (byte) ascii;
+			if (used == block.length) {
+				out.write(block, 0, used);
+				written += used;
+				used = 0;
+				if (progress != null) progress.set(reader.getBytesRead());
+			}
+		}
+		out.write(block, 0, used);
+		return written + used;
+	}
+	/**
+	 * Sets the counter that is advanced once per 64 KB: by the bytes read when compressing, and by the
+	 * position in the compressed stream when decompressing.
+	 * @param progress (ProgressCounter) or null
+	 */
+	public void setProgress(ProgressCounter progress) { this.progress = progress; }
+}
@@ -0,0 +1,205 @@
+package com.vapula87.huffman.compressor;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+/**
+ * Compresses or decompresses every file under a directory tree.<br><br>
+ *
+ * The tree is walked with Files.walkFileTree. Files smaller than SMALL_FILE are grouped, up to
+ * GROUP_BYTES or GROUP_FILES per group, and each group is one task on the work-stealing pool, so
+ * the per-task overhead is shared and idle workers steal whole groups. When compressing to the block
+ * or indexed format, larger files are coded one after another by the calling thread with a codec on
+ * the same pool, whose blocks are spread over the workers, so a single large file also keeps every core
+ * busy. Large files in the other formats are coded on one thread each, so they get a task of their own.
+ * Decompression cannot tell a file's format before reading it, so its large files stay on the calling thread.<br>
+ * A file that fails, or an entry of the tree that cannot be read, is recorded and the rest of the tree
+ * carries on. All submitted tasks are joined before a run returns. With an estimator set, files that a few
+ * samples show will not shrink are skipped without being read in full.
+ *
+ * @author Michael Hackett
+ */
+public class BatchCodec {
+	public static final long 				SMALL_FILE = BlockCodec.DEFAULT_BLOCK_SIZE, GROUP_BYTES = 8L << 20;
+	public static final int 				GROUP_FILES = 256;
+	private final ForkJoinPool 				pool;
+	private final Supplier<HuffmanCodec> 	codecs;
+	private final LongAdder 				files = new LongAdder(), skipped = new LongAdder(), bytesIn = new LongAdder(), bytesOut = new LongAdder();
+	private final ConcurrentLinkedQueue<String> failures = new ConcurrentLinkedQueue<>();
+	private CompressibilityEstimator 		estimator;
+	/**
+	 * Creates a batch runner.
+	 * @param pool (ForkJoinPool) runs the file groups and the blocks of large files
+	 * @param codecs (Supplier) creates a configured codec for each file; its pool is replaced by this one
+	 */
+	public BatchCodec(ForkJoinPool pool, Supplier<HuffmanCodec> codecs) {
+		this.pool = pool;
+		this.codecs = codecs;
+	}
+	/**
+	 * Compresses every file under root that is not already a .huff file.
+	 *
+	 * @param root (Path)
+	 * @param outDir (Path) mirrors the tree here, or null to write next to each file
+	 * @return (Result)
+	 * @throws IOException if the tree cannot be walked
+	 */
+	public Result compress(Path root, Path outDir) throws IOException { return run(root, outDir, true); }
+	/**
+	 * Decompresses every .huff file under root.
+	 *
+	 * @param root (Path)
+	 * @param outDir (Path) mirrors the tree here, or null to write next to each file
+	 * @return (Result)
+	 * @throws IOException if the tree cannot be walked
+	 */
+	public Result decompress(Path root, Path outDir) throws IOException { return run(root, outDir, false); }
+	private Result run(Path root, Path outDir, boolean compress) throws IOException {
+		long start = System.nanoTime();
+		int format = codecs.get().getFormat();
+		Walker walker = new Walker(root, outDir, compress, !compress || format == HuffmanCodec.FORMAT_BLOCK || format == HuffmanCodec.FORMAT_INDEXED);
+		try {
+			Files.walkFileTree(root, walker);
+			walker.flush();
+			for (Path file : walker.large) code(root, outDir, file, compress);
+		}
+		finally { for (ForkJoinTask<?> task : walker.tasks) task.quietlyJoin(); }
+		return new Result(files.sum(), failures.size(), skipped.sum(), bytesIn.sum(), bytesOut.sum(), System.nanoTime() - start);
+	}
+	private ForkJoinTask<?> submit(Path root, Path outDir, List<Path> group, boolean compress) {
+		return pool.submit(() -> {
+			for (Path file : group) code(root, outDir, file, compress);
+		});
+	}
+	/**
+	 * Groups the files of the tree into tasks as it is walked, recording entries that cannot be read as failures.
+	 */
+	private class Walker extends SimpleFileVisitor<Path> {
+		private final Path 					root, outDir;
+		private final boolean 				compress, inline;
+		private final List<ForkJoinTask<?>> tasks = new ArrayList<>();
+		private final List<Path> 			large = new ArrayList<>();
+		private List<Path> 					group = new ArrayList<>();
+		private long 						groupBytes = 0;
+		/**
+		 * Large files are kept for the calling thread when inline, and otherwise submitted one per task.
+		 */
+		private Walker(Path root, Path outDir, boolean compress, boolean inline) {
+			this.root = root;
+			this.outDir = outDir;
+			this.compress = compress;
+			this.inline = inline;
+		}
+		@Override
+		public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+			if (!attrs.isRegularFile() || compress == file.getFileName().toString().endsWith(HuffmanCodec.EXTENSION)) return FileVisitResult.CONTINUE;
+			if (attrs.size() >= SMALL_FILE) {
+				if (inline) large.add(file);
+				else tasks.add(submit(root, outDir, List.of(file), compress));
+				return FileVisitResult.CONTINUE;
+			}
+			group.add(file);
+			groupBytes += attrs.size();
+			if (groupBytes >= GROUP_BYTES || group.size() >= GROUP_FILES) flush();
+			return FileVisitResult.CONTINUE;
+		}
+		@Override
+		public FileVisitResult visitFileFailed(Path file, IOException e) {
+			failures.add(file + ": " + e.getMessage());
+			return FileVisitResult.CONTINUE;
+		}
+		@Override
+		public FileVisitResult postVisitDirectory(Path dir, IOException e) {
+			if (e != null) failures.add(dir + ": " + e.getMessage());
+			return FileVisitResult.CONTINUE;
+		}
+		/**
+		 * Submits the files grouped so far.
+		 */
+		private void flush() {
+			if (group.isEmpty()) return;
+			tasks.add(submit(root, outDir, group, compress));
+			group = new ArrayList<>();
+			groupBytes = 0;
+		}
+	}
+	/**
+	 * Codes one file with a fresh codec, recording its sizes or its failure.
+	 */
+	private void code(Path root, Path outDir, Path file, boolean compress) {
+		try {
+			Path dir = null;
+			if (outDir != null) {
+				Path parent = root.relativize(file).getParent();
+				dir = parent == null ? outDir : outDir.resolve(parent);
+				Files.createDirectories(dir);
+			}
+			HuffmanCodec codec = codecs.get();
+			codec.setPool(pool);
+			if (compress && estimator != null) {
+				codec.setEstimator(estimator);
+				if (!codec.estimateSavings(file)) {
+					skipped.increment();
+					return;
+				}
+			}
+			long size = Files.size(file);
+			Path out = compress ? codec.compressInto(file, dir) : codec.decompressInto(file, dir);
+			bytesIn.add(size);
+			bytesOut.add(Files.size(out));
+			files.increment();
+		}
+		catch (IOException | RuntimeException e) { failures.add(file + ": " + e.getMessage()); }
+	}
+	/**
+	 * Returns a message for each file that failed, in no particular order.
+	 * @return (List)
+	 */
+	public List<String> getFailures() { return new ArrayList<>(failures); }
+	/**
+	 * Skips files when compressing that the estimator predicts will not shrink, whatever the format.
+	 * Skipped files are left as they are and counted in {@link Result#getSkipped()}.
+	 * @param estimator (CompressibilityEstimator) or null to code every file
+	 */
+	public void setEstimator(CompressibilityEstimator estimator) { this.estimator = estimator; }
+	/**
+	 * Totals of a batch run.
+	 */
+	public static class Result {
+		private final long 	files, failed, skipped, bytesIn, bytesOut, nanos;
+		private Result(long files, long failed, long skipped, long bytesIn, long bytesOut, long nanos) {
+			this.files = files;
+			this.failed = failed;
+			this.skipped = skipped;
+			this.bytesIn = bytesIn;
+			this.bytesOut = bytesOut;
+			this.nanos = nanos;
+		}
+		public long getFiles() { return files; }
+		public long getFailed() { return failed; }
+		public long getSkipped() { return skipped; }
+		public long getBytesIn() { return bytesIn; }
+		public long getBytesOut() { return bytesOut; }
+		public long getNanos() { return nanos; }
+		/**
+		 * Returns the input consumed per second, in MB.
+		 * @return (double)
+		 */
+		public double getThroughput() { return nanos == 0 ? 0 : bytesIn / 1e6 / (nanos / 1e9); }
+		@Override
+		public String toString() {
+			return String.format("%d files (%d failed, %d skipped), %d -> %d bytes in %d ms, %.1f MB/s, %.0f files/s",
+					files, failed, skipped, bytesIn, bytesOut, nanos / 1000000, getThroughput(), nanos == 0 ? 0 : files / (nanos / 1e9));
+		}
+	}
+}
@@ -0,0 +1,449 @@
+package com.vapula87.huffman.compressor;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.vapula87.huffman.interfaces.IBlockModel;
+import com.vapula87.huffman.structures.CodeLengthBuilder;
+import com.vapula87.huffman.structures.CodeLengths;
+import com.vapula87.huffman.structures.CodeTable;
+import com.vapula87.huffman.structures.DecodeTable;
+import com.vapula87.huffman.structures.PackageMerge;
+import com.vapula87.huffman.utilities.BitReader;
+import com.vapula87.huffman.utilities.BitWriter;
+import com.vapula87.huffman.utilities.ProgressCounter;
+import com.vapula87.huffman.utilities.ThreadUsage;
+/**
+ * Block-parallel Huffman coding.<br><br>
+ *
+ * The input is cut into fixed-size blocks and every block is coded on its own with a table built
+ * by {@link CodeLengthBuilder}, so blocks can be encoded and decoded on a ForkJoinPool in any order.<br>
+ * Results are joined in input order, and block boundaries depend only on the block size, so the
+ * output is byte-identical for any number of threads.<br><br>
+ *
+ * Stream layout: block size (32 bits), then one frame per block: raw length (32 bits),
+ * payload length (32 bits), payload. A raw length of 0 ends the stream.<br>
+ * Payload layout: model byte, then the model's data. Blocks that would not shrink are stored.<br>
+ * Blocks of at least MODEL_MIN bytes also try the enabled models ({@link Order1Model}, {@link WideModel},
+ * {@link Lz77Model})
+ * and use the smallest.<br>
+ * With transforms selected ({@link TransformPipeline}), each block is also coded after running them,
+ * and kept if smaller. The stages are recorded in the upper bits of the model byte, followed by their
+ * parameters and the transformed length (32 bits) before the model's data.<br>
+ * The indexed format follows the end marker with a footer for random access: block count (32 bits),
+ * then each block's frame offset and uncompressed offset (64 bits each), the total uncompressed length
+ * (64 bits), and finally the footer's own offset (64 bits) and INDEX_MAGIC (32 bits).<br>
+ * With a maximum code length set, each block's lengths are limited by {@link PackageMerge}.
+ *
+ * @author Michael Hackett
+ */
+public class BlockCodec {
+	public static final int 		DEFAULT_BLOCK_SIZE = 1 << 20, MAX_BLOCK_SIZE = 1 << 26;
+	public static final int 		MODEL_STORED = 0, MODEL_HUFFMAN = 1, MODEL_ORDER1 = 2, MODEL_WIDE = 3, MODEL_LZ77 = 4;
+	public static final int 		TRY_ORDER1 = 1, TRY_WIDE = 2, TRY_LZ77 = 4;
+	public static final int 		MODEL_MASK = 0x0F, STAGE_SHIFT = 4;
+	public static final int 		INDEX_MAGIC = 0x48494458, TRAILER_BYTES = 12;
+	private static final int 		MODEL_MIN = 1 << 12;
+	/** Most a payload can exceed its block by: the model byte, every transform parameter and the transformed length. */
+	private static final int 		PAYLOAD_SLACK = 1 + TransformPipeline.headerBytes(TransformPipeline.ALL) + 4;
+	private static final ThreadLocal<CodeLengthBuilder> BUILDER =
+			ThreadLocal.withInitial(() -> new CodeLengthBuilder(HuffmanCodec.PSEUDO_EOF + 1));
+	private final ForkJoinPool 		pool;
+	private final int 				blockSize, window;
+	private final LongAdder 		optimalBits = new LongAdder(), codedBits = new LongAdder();
+	private int 					maxLength = 0, blocks = 0;
+	private int 					models = 0, stages = 0;
+	private long[] 					frameOffsets, rawOffsets;
+	private long 					rawTotal = 0;
+	private ProgressCounter 		progress;
+	private ThreadUsage 			usage;
+	/**
+	 * Creates a block codec.
+	 * @param pool (ForkJoinPool) runs the per-block work
+	 * @param blockSize (int) uncompressed bytes per block, at most MAX_BLOCK_SIZE
+	 */
+	public BlockCodec(ForkJoinPool pool, int blockSize) {
+		if (!validBlockSize(blockSize)) throw new IllegalArgumentException("Block size must be between 1 and " + MAX_BLOCK_SIZE + ".");
+		this.pool = pool;
+		this.blockSize = blockSize;
+		this.window = pool.getParallelism() * 2;
+	}
+	/**
+	 * Compresses the stream block by block. Reading and writing stay on the calling thread,
+	 * while up to two blocks per worker are being encoded.
+	 *
+	 * @param in (InputStream)
+	 * @param writer (BitWriter) positioned at a byte boundary
+	 * @return (long) uncompressed bytes read
+	 * @throws IOException
+	 */
+	public long compress(InputStream in, BitWriter writer) throws IOException {
+		ArrayDeque<ForkJoinTask<byte[]>> pending = new ArrayDeque<>();
+		ArrayDeque<Integer> sizes = new ArrayDeque<>();
+		long read = 0;
+		writer.write(blockSize, 32);
+		while (true) {
+			byte[] block = new byte[blockSize];
+			int len = readBlock(in, block);
+			boolean end = len < blockSize;
+			if (len > 0) {
+				pending.add(pool.submit(() -> {
+					long cpu = ThreadUsage.cpuTime(), memory = ThreadUsage.allocated();
+					long[] cost = new long[2];
+					byte[] payload = encodeBlock(block, 0, len, maxLength, models, stages, cost);
+					optimalBits.add(cost[0]);
+					codedBits.add(cost[1]);
+					if (usage != null) usage.add(cpu, memory);
+					return payload;
+				}));
+				sizes.add(len);
+				read += len;
+			}
+			while (!pending.isEmpty() && (end || pending.size() >= window)) {
+				byte[] payload = join(pending.poll());
+				if (frameOffsets != null) addIndex(writer.getBytesWritten(), sizes.peek());
+				writer.write(sizes.poll(), 32);
+				writer.write(payload.length, 32);
+				writer.writeBytes(payload, 0, payload.length);
+			}
+			if (progress != null) progress.set(read);
+			if (end) break;
+		}
+		writer.write(0, 32);
+		return read;
+	}
+	/**
+	 * Records a frame in the block index.
+	 */
+	private void addIndex(long frameOffset, int rawLen) {
+		if (blocks == frameOffsets.length) {
+			frameOffsets = Arrays.copyOf(frameOffsets, blocks * 2);
+			rawOffsets = Arrays.copyOf(rawOffsets, blocks * 2);
+		}
+		frameOffsets[blocks] = frameOffset;
+		rawOffsets[blocks++] = rawTotal;
+		rawTotal += rawLen;
+	}
+	/**
+	 * Writes the block index footer recorded by {@link #compress}. The writer must have started at
+	 * the beginning of the file, so that its byte count is the file offset.
+	 *
+	 * @param writer (BitWriter) positioned after the end marker
+	 * @throws IOException
+	 */
+	public void writeIndex(BitWriter writer) throws IOException {
+		long indexOffset = writer.getBytesWritten();
+		writer.write(blocks, 32);
+		for (int b = 0; b < blocks; b++) {
+			writer.write(frameOffsets[b], 64);
+			writer.write(rawOffsets[b], 64);
+		}
+		writer.write(rawTotal, 64);
+		writer.write(indexOffset, 64);
+		writer.write(INDEX_MAGIC, 32);
+	}
+	/**
+	 * Decompresses a stream written by {@link #compress}.
+	 *
+	 * @param reader (BitReader) positioned at a byte boundary
+	 * @param out (OutputStream)
+	 * @return (long) uncompressed bytes written
+	 * @throws IOException
+	 */
+	public long decompress(BitReader reader, OutputStream out) throws IOException {
+		ArrayDeque<ForkJoinTask<byte[]>> pending = new ArrayDeque<>();
+		ArrayDeque<Integer> sizes = new ArrayDeque<>();
+		int storedSize = reader.readBits(32);
+		long written = 0;
+		if (!validBlockSize(storedSize)) throw new IOException("Decompression failed: File corrupted.");
+		while (true) {
+			int rawLen = reader.readBits(32);
+			if (rawLen < 0 || rawLen > storedSize) throw new IOException("Decompression failed: File corrupted.");
+			if (rawLen > 0) {
+				int payloadLen = reader.readBits(32);
+				if (!validPayload(payloadLen, rawLen)) throw new IOException("Decompression failed: File corrupted.");
+				byte[] payload = new byte[payloadLen];
+				reader.readFully(payload, 0, payloadLen);
+				pending.add(pool.submit(() -> {
+					long cpu = ThreadUsage.cpuTime(), memory = ThreadUsage.allocated();
+					byte[] block = decodeBlock(payload, rawLen);
+					if (usage != null) usage.add(cpu, memory);
+					return block;
+				}));
+				sizes.add(rawLen);
+			}
+			while (!pending.isEmpty() && (rawLen == 0 || pending.size() >= window)) {
+				byte[] block = join(pending.poll());
+				out.write(block, 0, sizes.poll());
+				written += block.length;
+			}
+			if (progress != null) progress.set(reader.getBytesRead());
+			if (rawLen == 0) break;
+		}
+		return written;
+	}
+	/**
+	 * Encodes one block into a self-contained payload.
+	 *
+	 * @param src (byte[])
+	 * @param off (int)
+	 * @param len (int)
+	 * @return (byte[]) the payload
+	 * @throws IOException
+	 */
+	public static byte[] encodeBlock(byte[] src, int off, int len) throws IOException { return encodeBlock(src, off, len, 0, 0, null); }
+	/**
+	 * Returns the model flags that enable LZ77 with the given effort and window.
+	 *
+	 * @param level (int) 1 to Lz77Model.MAX_LEVEL
+	 * @param windowBits (int) log2 of the match window
+	 * @return (int) TRY_LZ77 with the settings in its upper bits, to be combined with the other TRY_ flags
+	 */
+	public static int lz77(int level, int windowBits) { return TRY_LZ77 | level << 8 | windowBits << 16; }
+	/**
+	 * Encodes one block into a self-contained payload with codes no longer than maxLength.<br>
+	 * The models selected by the TRY_ flags are also built and used if they are smaller.
+	 *
+	 * @param src (byte[])
+	 * @param off (int)
+	 * @param len (int)
+	 * @param maxLength (int) longest code allowed, or 0 for no limit
+	 * @param models (int) any of TRY_ORDER1, TRY_WIDE and lz77(), or 0
+	 * @param cost (long[]) if not null, receives the unlimited and actual coded bits of an order-0 Huffman block
+	 * @return (byte[]) the payload
+	 * @throws IOException
+	 */
+	public static byte[] encodeBlock(byte[] src, int off, int len, int maxLength, int models, long[] cost) throws IOException {
+		return encodeBlock(src, off, len, maxLength, models, 0, cost);
+	}
+	/**
+	 * Encodes one block, also trying the given transform stages and keeping whichever payload is smaller.
+	 *
+	 * @param src (byte[])
+	 * @param off (int)
+	 * @param len (int)
+	 * @param maxLength (int) longest code allowed, or 0 for no limit
+	 * @param models (int) any of TRY_ORDER1, TRY_WIDE and lz77(), or 0
+	 * @param stages (int) TransformPipeline stage flags, or 0
+	 * @param cost (long[]) if not null, receives the unlimited and actual coded bits of an order-0 Huffman block
+	 * @return (byte[]) the payload
+	 * @throws IOException
+	 */
+	public static byte[] encodeBlock(byte[] src, int off, int len, int maxLength, int models, int stages, long[] cost) throws IOException {
+		if (stages == 0 || len == 0) return encodeModel(src, off, len, maxLength, models, cost);
+		byte[] plain = encodeModel(src, off, len, maxLength, models, cost);
+		ByteArrayOutputStream header = new ByteArrayOutputStream();
+		DataOutputStream side = new DataOutputStream(header);
+		byte[] data = TransformPipeline.forward(stages, src, off, len, side);
+		side.writeInt(data.length);
+		long[] transformedCost = cost != null ? new long[2] : null;
+		byte[] inner = encodeModel(data, 0, data.length, maxLength, models, transformedCost);
+		if (inner.length + header.size() >= plain.length) return plain;
+		byte[] payload = new byte[inner.length + header.size()];
+		payload[0] = (byte) (inner[0] | stages << STAGE_SHIFT);
+		System.arraycopy(header.toByteArray(), 0, payload, 1, header.size());
+		System.arraycopy(inner, 1, payload, 1 + header.size(), inner.length - 1);
+		if (cost != null) System.arraycopy(transformedCost, 0, cost, 0, 2);
+		return payload;
+	}
+	/**
+	 * Codes the block with the smallest of the enabled models.
+	 */
+	private static byte[] encodeModel(byte[] src, int off, int len, int maxLength, int models, long[] cost) throws IOException {
+		int[] counts = new int[HuffmanCodec.PSEUDO_EOF + 1];
+		for (int w = off; w < off + len; w++) counts[src[w] & 0xFF]++;
+		counts[HuffmanCodec.PSEUDO_EOF] = 1;
+		int[] lengths = BUILDER.get().build(counts, new int[HuffmanCodec.PSEUDO_EOF + 1]);
+		long optimal = 0, bits = 0;
+		for (int s = 0; s < HuffmanCodec.MAX_COUNT; s++) optimal += (long) counts[s] * lengths[s];
+		if (maxLength > 0 && PackageMerge.maxLength(lengths) > maxLength) lengths = PackageMerge.lengths(counts, maxLength);
+		for (int s = 0; s < HuffmanCodec.MAX_COUNT; s++) bits += (long) counts[s] * lengths[s];
+		if (cost != null) {
+			cost[0] = optimal;
+			cost[1] = bits;
+		}
+		bits += CodeLengths.size(lengths);
+		IBlockModel best = null;
+		if (len >= MODEL_MIN) {
+			if ((models & TRY_ORDER1) != 0) best = smaller(best, bits, Order1Model.build(src, off, len, BUILDER.get()));
+			if ((models & TRY_WIDE) != 0) best = smaller(best, bits, WideModel.build(src, off, len, maxLength));
+			if ((models & TRY_LZ77) != 0) best = smaller(best, bits, Lz77Model.build(src, off, len, (models >>> 8) & 0xFF, models >>> 16, maxLength));
+		}
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(len / 2 + 64);
+		if ((best != null ? best.getBits() : bits) / 8 + 1 >= len) {
+			if (cost != null) cost[0] = cost[1] = 0;
+			bytes.write(MODEL_STORED);
+			bytes.write(src, off, len);
+			return bytes.toByteArray();
+		}
+		if (best != null) {
+			if (cost != null) cost[0] = cost[1] = 0;
+			bytes.write(best.getModel());
+			BitWriter writer = new BitWriter(bytes, 1 << 16);
+			best.write(writer, src, off, len);
+			writer.flush();
+			return bytes.toByteArray();
+		}
+		bytes.write(MODEL_HUFFMAN);
+		CodeTable table = CodeTable.canonical(lengths);
+		long[] codes = table.getCodes();
+		BitWriter writer = new BitWriter(bytes, 1 << 16);
+		CodeLengths.write(writer, lengths);
+		for (int w = off; w < off + len; w++) {
+			int symbol = src[w] & 0xFF;
+			writer.write(codes[symbol], lengths[symbol]);
+		}
+		writer.flush();
+		return bytes.toByteArray();
+	}
+	/**
+	 * Returns the candidate if it beats both the current best model and plain order-0 coding.
+	 */
+	private static IBlockModel smaller(IBlockModel best, long order0Bits, IBlockModel candidate) {
+		long bits = best != null ? best.getBits() : order0Bits;
+		return candidate.getBits() < bits ? candidate : best;
+	}
+	/**
+	 * Decodes one payload written by {@link #encodeBlock}.
+	 *
+	 * @param payload (byte[])
+	 * @param rawLen (int) uncompressed length of the block
+	 * @return (byte[]) the block
+	 * @throws IOException
+	 */
+	public static byte[] decodeBlock(byte[] payload, int rawLen) throws IOException {
+		int stages = (payload[0] & 0xFF) >>> STAGE_SHIFT;
+		if (stages != 0) {
+			DataInputStream side = new DataInputStream(new ByteArrayInputStream(payload, 1, payload.length - 1));
+			int[] parameters = TransformPipeline.readParameters(stages, side);
+			int dataLen = side.readInt(), header = 1 + TransformPipeline.headerBytes(stages) + 4;
+			if (dataLen < 0 || dataLen > rawLen + rawLen / 4 + 1 || header > payload.length) throw new IOException("Decompression failed: File corrupted.");
+			byte[] inner = new byte[payload.length - header + 1];
+			inner[0] = (byte) (payload[0] & MODEL_MASK);
+			System.arraycopy(payload, header, inner, 1, inner.length - 1);
+			byte[] block = TransformPipeline.inverse(stages, parameters, decodeBlock(inner, dataLen));
+			if (block.length != rawLen) throw new IOException("Decompression failed: File corrupted.");
+			return block;
+		}
+		byte[] block = new byte[rawLen];
+		switch (payload[0]) {
+			case MODEL_STORED:
+				if (payload.length - 1 != rawLen) throw new IOException("Decompression failed: File corrupted.");
+				System.arraycopy(payload, 1, block, 0, rawLen);
+				break;
+			case MODEL_HUFFMAN:
+				BitReader reader = new BitReader(new ByteArrayInputStream(payload, 1, payload.length - 1), 1 << 12);
+				DecodeTable table = new DecodeTable(CodeTable.canonical(CodeLengths.read(reader, HuffmanCodec.PSEUDO_EOF + 1)));
+				for (int w = 0; w < rawLen; w++) {
+					int symbol = table.decode(reader);
+					if (symbol == HuffmanCodec.PSEUDO_EOF) throw new IOException("Decompression failed: File corrupted.");
+					block[w] = (byte) symbol;
+				}
+				break;
+			case MODEL_ORDER1:
+				Order1Model.read(new BitReader(new ByteArrayInputStream(payload, 1, payload.length - 1), 1 << 12), block, rawLen);
+				break;
+			case MODEL_WIDE:
+				WideModel.read(new BitReader(new ByteArrayInputStream(payload, 1, payload.length - 1), 1 << 12), block, rawLen);
+				break;
+			case MODEL_LZ77:
+				Lz77Model.read(new BitReader(new ByteArrayInputStream(payload, 1, payload.length - 1), 1 << 12), block, rawLen);
+				break;
+			default:
+				throw new IOException("Decompression failed: Unknown block model " + payload[0] + ".");
+		}
+		return block;
+	}
+	/**
+	 * Returns whether a block size read from a header is one that could have been written, so a corrupted
+	 * header cannot make the decoder allocate arbitrary amounts of memory.
+	 * @param blockSize (int)
+	 * @return (boolean)
+	 */
+	static boolean validBlockSize(int blockSize) { return blockSize > 0 && blockSize <= MAX_BLOCK_SIZE; }
+	/**
+	 * Returns whether a payload length read from a frame is one that could have been written for the block.<br>
+	 * A block is stored as-is rather than grow, so its payload is never longer than the block plus its headers.
+	 * @param payloadLen (int)
+	 * @param rawLen (int) the block's uncompressed length, already checked against the block size
+	 * @return (boolean)
+	 */
+	static boolean validPayload(int payloadLen, int rawLen) { return payloadLen > 0 && payloadLen <= rawLen + PAYLOAD_SLACK; }
+	/**
+	 * Fills the block from the stream, stopping early only at the end of the stream.
+	 */
+	private static int readBlock(InputStream in, byte[] block) throws IOException {
+		int len = 0, read;
+		while (len < block.length && (read = in.read(block, len, block.length - len)) != -1) len += read;
+		return len;
+	}
+	/**
+	 * Waits for a block task, unwrapping the IOException it may have thrown.
+	 */
+	static <T> T join(ForkJoinTask<T> task) throws IOException {
+		try { return task.get(); }
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Operation interrupted.");
+		}
+		catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+			throw new IOException("Decompression failed: File corrupted.");
+		}
+	}
+	/**
+	 * Returns how much larger the Huffman-coded blocks came out because of the length limit, as a fraction.
+	 * @return (double)
+	 */
+	public double getLimitLoss() {
+		long optimal = optimalBits.sum();
+		return optimal == 0 ? 0 : (double) (codedBits.sum() - optimal) / optimal;
+	}
+	/**
+	 * Records a block index while compressing, for {@link #writeIndex}.
+	 * @param indexed (boolean)
+	 */
+	public void setIndexed(boolean indexed) {
+		frameOffsets = indexed ? new long[16] : null;
+		rawOffsets = indexed ? new long[16] : null;
+		blocks = 0;
+		rawTotal = 0;
+	}
+	/**
+	 * Selects the extra models tried on every block.
+	 * @param models (int) any of TRY_ORDER1, TRY_WIDE and lz77(), or 0
+	 */
+	public void setModels(int models) { this.models = models; }
+	/**
+	 * Selects the transform stages tried on every block.
+	 * @param stages (int) TransformPipeline stage flags, or 0
+	 */
+	public void setTransforms(int stages) { this.stages = stages; }
+	/**
+	 * Limits every block's codes to the given length.
+	 * @param maxLength (int) longest code allowed, or 0 for no limit
+	 */
+	public void setMaxLength(int maxLength) { this.maxLength = maxLength; }
+	/**
+	 * Sets the counter that is advanced once per block: by the bytes read when compressing, and by the
+	 * position in the compressed stream when decompressing.
+	 * @param progress (ProgressCounter) or null
+	 */
+	public void setProgress(ProgressCounter progress) { this.progress = progress; }
+	/**
+	 * Sets the usage that each block task adds its CPU time and allocations to.
+	 * @param usage (ThreadUsage) or null
+	 */
+	public void setUsage(ThreadUsage usage) { this.usage = usage; }
+}
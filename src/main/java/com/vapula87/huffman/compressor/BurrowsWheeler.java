@@ -0,0 +1,92 @@
+package com.vapula87.huffman.compressor;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import com.vapula87.huffman.interfaces.IBlockTransform;
+/**
+ * Burrows-Wheeler transform.<br><br>
+ *
+ * A unique sentinel, smaller than every byte, is appended so that sorting the rotations is the
+ * same as sorting the suffixes. The suffix array is built by prefix doubling: each round sorts
+ * the suffixes by their first 2k bytes with two stable counting sorts over the ranks from the
+ * previous round, for O(n log n) time on multi-MB blocks.<br>
+ * The output is the byte before each sorted suffix with the sentinel's entry left out; the
+ * parameter is where it was (the primary index). The inverse walks the last-to-first mapping.
+ *
+ * @author Michael Hackett
+ */
+public class BurrowsWheeler implements IBlockTransform {
+	@Override
+	public int getFlag() { return TransformPipeline.BWT; }
+	@Override
+	public byte[] forward(byte[] src, int len, int[] parameter) {
+		int[] sa = suffixArray(src, len);
+		byte[] out = new byte[len];
+		for (int i = 0, o = 0; i <= len; i++) {
+			if (sa[i] == 0) parameter[0] = i;
+			else out[o++] = src[sa[i] - 1];
+		}
+		return out;
+	}
+	@Override
+	public byte[] inverse(byte[] src, int len, int parameter) throws IOException {
+		int n = len + 1, primary = parameter;
+		if (primary < 0 || primary > len || (len > 0 && primary == 0)) throw new IOException("Decompression failed: File corrupted.");
+		int[] base = new int[HuffmanCodec.MAX_COUNT + 1];
+		for (int i = 0; i < len; i++) base[(src[i] & 0xFF) + 1]++;
+		base[0] = 1;
+		for (int c = 1; c <= HuffmanCodec.MAX_COUNT; c++) base[c] += base[c - 1];
+		int[] next = new int[n];
+		for (int row = 0, i = 0; row < n; row++) {
+			if (row == primary) continue;
+			next[row] = base[src[i++] & 0xFF]++;
+		}
+		byte[] out = new byte[len];
+		for (int k = len - 1, row = 0; k >= 0; k--) {
+			out[k] = src[row < primary ? row : row - 1];
+			row = next[row];
+		}
+		return out;
+	}
+	/**
+	 * Sorts the suffixes of src[0..len) plus the sentinel by prefix doubling.
+	 *
+	 * @param src (byte[])
+	 * @param len (int)
+	 * @return (int[]) start positions of the len + 1 suffixes in sorted order
+	 */
+	public static int[] suffixArray(byte[] src, int len) {
+		int n = len + 1;
+		int[] sa = new int[n], rank = new int[n], tmp = new int[n];
+		int[] count = new int[Math.max(HuffmanCodec.MAX_COUNT + 1, n)];
+		for (int i = 0; i < len; i++) rank[i] = (src[i] & 0xFF) + 1;
+		for (int i = 0; i < n; i++) count[rank[i]]++;
+		for (int c = 1; c <= HuffmanCodec.MAX_COUNT; c++) count[c] += count[c - 1];
+		for (int i = n - 1; i >= 0; i--) sa[--count[rank[i]]] = i;
+		int classes = 1;
+		tmp[sa[0]] = 0;
+		for (int j = 1; j < n; j++) tmp[sa[j]] = rank[sa[j]] == rank[sa[j - 1]] ? classes - 1 : classes++;
+		System.arraycopy(tmp, 0, rank, 0, n);
+		for (int k = 1; classes < n; k <<= 1) {
+			int p = 0;
+			for (int i = n - k; i < n; i++) tmp[p++] = i;
+			for (int j = 0; j < n; j++) if (sa[j] >= k) tmp[p++] = sa[j] - k;
+			Arrays.fill(count, 0, classes, 0);
+			for (int i = 0; i < n; i++) count[rank[i]]++;
+			for (int c = 1; c < classes; c++) count[c] += count[c - 1];
+			for (int j = n - 1; j >= 0; j--) sa[--count[rank[tmp[j]]]] = tmp[j];
+			classes = 1;
+			tmp[sa[0]] = 0;
+			for (int j = 1; j < n; j++) {
+				int a = sa[j - 1], b = sa[j];
+				boolean same = rank[a] == rank[b] && (a + k < n ? rank[a + k] : -1) == (b + k < n ? rank[b + k] : -1);
+				tmp[b] = same ? classes - 1 : classes++;
+			}
+			int[] swap = rank;
+			rank = tmp;
+			tmp = swap;
+		}
+		return sa;
+	}
+}
@@ -0,0 +1,211 @@
+package com.vapula87.huffman.compressor;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Percentage;
+
+import com.vapula87.huffman.utilities.ThreadUsage;
+/**
+ * Per-phase timings and totals for one compression or decompression.<br><br>
+ *
+ * Each phase (counting, tree build, header, encode, decode) records its wall time, and the CPU time and
+ * allocated bytes of the calling thread plus those of the work it hands to other threads: the pool tasks
+ * that count slices and code blocks, and the reader and writer threads, each add their own thread's
+ * figures to the phase's {@link ThreadUsage}. Only this operation's threads are counted, so the figures
+ * stay correct when several files are coded at once, as in {@link BatchCodec}. Phases that run more than once add up. Every phase and every finished
+ * operation is also committed as a Flight Recorder event in the "Huffman" category, so recordings
+ * show where the time of each file went; the events cost next to nothing while recording is off.
+ *
+ * @author Michael Hackett
+ */
+public class CodecMetrics {
+	public enum Phase { COUNT, TREE, HEADER, ENCODE, DECODE }
+	private final String 						operation, file;
+	private final Map<Phase, long[]> 			phases = new EnumMap<>(Phase.class);
+	private final Map<Phase, ThreadUsage> 		workers = new EnumMap<>(Phase.class);
+	private final long 							start = System.nanoTime();
+	private final FileEvent 					event = new FileEvent();
+	private long 								nanos, bytesIn, bytesOut;
+	private int 								format = -1;
+	private int[] 								lengths;
+	/**
+	 * Starts the metrics of an operation.
+	 * @param operation (String) "compress" or "decompress"
+	 * @param file (String) file name, or "" for a stream
+	 */
+	public CodecMetrics(String operation, String file) {
+		this.operation = operation;
+		this.file = file;
+		event.begin();
+	}
+	/**
+	 * Starts timing a phase. Closing the span adds its time to the phase.
+	 * @param phase (Phase)
+	 * @return (Span)
+	 */
+	public Span start(Phase phase) { return new Span(phase); }
+	/**
+	 * Returns the usage that work done on other threads during a phase adds itself to.
+	 * @param phase (Phase)
+	 * @return (ThreadUsage)
+	 */
+	public ThreadUsage workers(Phase phase) { return workers.computeIfAbsent(phase, key -> new ThreadUsage()); }
+	/**
+	 * Ends the operation and reports it to Flight Recorder.
+	 *
+	 * @param bytesIn (long)
+	 * @param bytesOut (long)
+	 */
+	void finish(long bytesIn, long bytesOut) {
+		this.bytesIn = bytesIn;
+		this.bytesOut = bytesOut;
+		nanos = System.nanoTime() - start;
+		event.end();
+		if (!event.shouldCommit()) return;
+		event.operation = operation;
+		event.file = file;
+		event.format = format;
+		event.bytesIn = bytesIn;
+		event.bytesOut = bytesOut;
+		event.ratio = getRatio();
+		event.throughput = getThroughput();
+		event.commit();
+	}
+	void setFormat(int format) { this.format = format; }
+	/**
+	 * Records the code lengths of a format with a single table.
+	 * @param lengths (int[]) indexed by symbol
+	 */
+	void setLengths(int[] lengths) { this.lengths = lengths; }
+	public String getOperation() { return operation; }
+	public String getFile() { return file; }
+	public int getFormat() { return format; }
+	public long getBytesIn() { return bytesIn; }
+	public long getBytesOut() { return bytesOut; }
+	public long getNanos() { return nanos; }
+	/**
+	 * Returns the wall time of a phase in nanoseconds, 0 if it did not run.
+	 * @param phase (Phase)
+	 * @return (long)
+	 */
+	public long getWallNanos(Phase phase) { return phases.containsKey(phase) ? phases.get(phase)[0] : 0; }
+	/**
+	 * Returns the CPU time of a phase in nanoseconds, including its worker threads, or -1 if the JVM does not report it.
+	 * @param phase (Phase)
+	 * @return (long)
+	 */
+	public long getCpuNanos(Phase phase) {
+		if (!phases.containsKey(phase)) return 0;
+		long own = phases.get(phase)[1];
+		return own < 0 || !workers.containsKey(phase) ? own : own + workers.get(phase).getCpuNanos();
+	}
+	/**
+	 * Returns the bytes allocated during a phase, including its worker threads, or -1 if the JVM does not report them.
+	 * @param phase (Phase)
+	 * @return (long)
+	 */
+	public long getAllocatedBytes(Phase phase) {
+		if (!phases.containsKey(phase)) return 0;
+		long own = phases.get(phase)[2];
+		return own < 0 || !workers.containsKey(phase) ? own : own + workers.get(phase).getAllocatedBytes();
+	}
+	/**
+	 * Returns the compressed size as a fraction of the uncompressed size.
+	 * @return (double)
+	 */
+	public double getRatio() {
+		long plain = operation.equals("compress") ? bytesIn : bytesOut, coded = operation.equals("compress") ? bytesOut : bytesIn;
+		return plain == 0 ? 0 : (double) coded / plain;
+	}
+	/**
+	 * Returns the uncompressed bytes processed per second, in MB.
+	 * @return (double)
+	 */
+	public double getThroughput() {
+		long plain = operation.equals("compress") ? bytesIn : bytesOut;
+		return nanos == 0 ? 0 : plain / 1e6 / (nanos / 1e9);
+	}
+	/**
+	 * Returns how many symbols have each code length, indexed by length, for formats with a single table.
+	 * @return (int[]) or null for the block, indexed and adaptive formats
+	 */
+	public int[] getLengthDistribution() {
+		if (lengths == null) return null;
+		int max = 0;
+		for (int len : lengths) max = Math.max(max, len);
+		int[] distribution = new int[max + 1];
+		for (int len : lengths) if (len > 0) distribution[len]++;
+		return distribution;
+	}
+	@Override
+	public String toString() {
+		StringBuilder text = new StringBuilder(String.format("%s %s: %d -> %d bytes, ratio %.4f, %.1f MB/s",
+				operation, file, bytesIn, bytesOut, getRatio(), getThroughput()));
+		for (Phase phase : phases.keySet())
+			text.append(String.format("%n  %-6s %8.2f ms wall %8.2f ms cpu %10d bytes allocated", phase.name().toLowerCase(),
+					getWallNanos(phase) / 1e6, getCpuNanos(phase) / 1e6, getAllocatedBytes(phase)));
+		int[] distribution = getLengthDistribution();
+		if (distribution != null) {
+			text.append(String.format("%n  code lengths"));
+			for (int len = 1; len < distribution.length; len++) if (distribution[len] > 0) text.append(' ').append(len).append('x').append(distribution[len]);
+		}
+		return text.toString();
+	}
+	/**
+	 * One timed run of a phase, begun when created and ended by {@link #close()}.
+	 */
+	public class Span implements AutoCloseable {
+		private final Phase 		phase;
+		private final PhaseEvent 	event = new PhaseEvent();
+		private final long 			wall = System.nanoTime(), cpu = ThreadUsage.cpuTime(), memory = ThreadUsage.allocated();
+		private Span(Phase phase) {
+			this.phase = phase;
+			event.begin();
+		}
+		@Override
+		public void close() {
+			long[] totals = phases.computeIfAbsent(phase, key -> new long[3]);
+			long used = cpu < 0 ? -1 : ThreadUsage.cpuTime() - cpu, bytes = memory < 0 ? -1 : ThreadUsage.allocated() - memory;
+			totals[0] += System.nanoTime() - wall;
+			totals[1] = used < 0 ? -1 : totals[1] + used;
+			totals[2] = bytes < 0 ? -1 : totals[2] + bytes;
+			event.end();
+			if (!event.shouldCommit()) return;
+			event.operation = operation;
+			event.file = file;
+			event.phase = phase.name().toLowerCase();
+			event.allocated = bytes < 0 || !workers.containsKey(phase) ? bytes : bytes + workers.get(phase).getAllocatedBytes();
+			event.commit();
+		}
+	}
+	@Name("com.vapula87.huffman.Phase")
+	@Label("Huffman Phase")
+	@Category("Huffman")
+	@Description("One phase of compressing or decompressing a file")
+	static class PhaseEvent extends Event {
+		@Label("Operation") String operation;
+		@Label("File") String file;
+		@Label("Phase") String phase;
+		@Label("Allocated") @Description("Bytes allocated by the calling thread") @DataAmount long allocated;
+	}
+	@Name("com.vapula87.huffman.File")
+	@Label("Huffman File")
+	@Category("Huffman")
+	@Description("A finished compression or decompression")
+	static class FileEvent extends Event {
+		@Label("Operation") String operation;
+		@Label("File") String file;
+		@Label("Format") int format;
+		@Label("Bytes In") @DataAmount long bytesIn;
+		@Label("Bytes Out") @DataAmount long bytesOut;
+		@Label("Ratio") @Percentage double ratio;
+		@Label("Throughput") @Description("Uncompressed MB per second") double throughput;
+	}
+}
@@ -0,0 +1,192 @@
+package com.vapula87.huffman.compressor;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import com.vapula87.huffman.structures.CodeLengthBuilder;
+import com.vapula87.huffman.structures.CodeLengths;
+/**
+ * Predicts whether a file will compress from a few evenly spaced samples.<br><br>
+ *
+ * The byte counts of the samples give, in O(256) work, an entropy estimate corrected for the bias of
+ * small samples (Miller-Madow) and the average length of a Huffman code built for them. The standard
+ * error of that length is taken as the larger of the per-byte error and the spread between samples,
+ * which catches files whose parts differ. A file is only judged incompressible when the lower
+ * confidence bound on the coded size, plus the header, does not save space, so at the given confidence
+ * compressible files are not rejected.<br>
+ * Files no larger than all samples together are read whole, and the estimate is then exact.
+ *
+ * @author Michael Hackett
+ */
+public class CompressibilityEstimator {
+	public static final int 	DEFAULT_SAMPLES = 16, DEFAULT_SAMPLE_SIZE = 1 << 16;
+	public static final double 	DEFAULT_CONFIDENCE = 0.99;
+	private final int 			samples, sampleSize;
+	private final double 		z;
+	/**
+	 * Creates an estimator with DEFAULT_SAMPLES samples of DEFAULT_SAMPLE_SIZE bytes at DEFAULT_CONFIDENCE.
+	 */
+	public CompressibilityEstimator() { this(DEFAULT_SAMPLES, DEFAULT_SAMPLE_SIZE, DEFAULT_CONFIDENCE); }
+	/**
+	 * Creates an estimator.
+	 * @param samples (int) number of evenly spaced samples, at least 1
+	 * @param sampleSize (int) bytes per sample
+	 * @param confidence (double) probability, between 0.5 and 1, that a compressible file is not rejected
+	 */
+	public CompressibilityEstimator(int samples, int sampleSize, double confidence) {
+		if (samples < 1 || sampleSize < 1 || confidence < 0.5 || confidence >= 1) throw new IllegalArgumentException("Invalid estimator settings.");
+		this.samples = samples;
+		this.sampleSize = sampleSize;
+		this.z = quantile(confidence);
+	}
+	/**
+	 * Samples the file and estimates its coded size.
+	 *
+	 * @param file (Path)
+	 * @return (Estimate)
+	 * @throws IOException
+	 */
+	public Estimate estimate(Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			long size = channel.size();
+			boolean whole = size <= (long) samples * sampleSize;
+			int count = whole ? 1 : samples;
+			long[][] parts = new long[count][HuffmanCodec.MAX_COUNT];
+			ByteBuffer buffer = ByteBuffer.allocate(whole ? (int) size : sampleSize);
+			for (int s = 0; s < count; s++) {
+				long pos = count == 1 ? 0 : s * ((size - sampleSize) / (count - 1));
+				buffer.clear();
+				while (buffer.hasRemaining() && channel.read(buffer, pos + buffer.position()) > 0) { }
+				byte[] bytes = buffer.array();
+				for (int w = 0; w < buffer.position(); w++) parts[s][bytes[w] & 0xFF]++;
+			}
+			return estimate(parts, size, whole);
+		}
+	}
+	/**
+	 * Estimates from byte counts that cover the whole file, for example from a counting pass.
+	 *
+	 * @param totals (long[]) 256 counts
+	 * @return (Estimate)
+	 */
+	public Estimate estimate(long[] totals) {
+		long size = 0;
+		for (long count : totals) size += count;
+		return estimate(new long[][]{ totals }, size, true);
+	}
+	private Estimate estimate(long[][] parts, long size, boolean whole) {
+		long[] totals = new long[HuffmanCodec.MAX_COUNT];
+		for (long[] part : parts) for (int x = 0; x < totals.length; x++) totals[x] += part[x];
+		long n = 0;
+		int used = 0;
+		for (long count : totals) {
+			n += count;
+			if (count > 0) used++;
+		}
+		int[] weights = new int[HuffmanCodec.PSEUDO_EOF + 1];
+		int[] counts = FrequencyCounter.toCounts(totals);
+		System.arraycopy(counts, 0, weights, 0, counts.length);
+		weights[HuffmanCodec.PSEUDO_EOF] = 1;
+		int[] lengths = new CodeLengthBuilder(weights.length).build(weights, new int[weights.length]);
+		double entropy = entropy(totals, n), rate = rate(totals, n, lengths), lower = rate;
+		if (!whole && n > 0) {
+			entropy += (used - 1) / (2.0 * n * Math.log(2));
+			double square = 0;
+			for (int s = 0; s < totals.length; s++) square += (double) totals[s] / n * lengths[s] * lengths[s];
+			double perByte = Math.sqrt(Math.max(0, square - rate * rate) / n), mean = 0, spread = 0;
+			double[] rates = new double[parts.length];
+			for (int s = 0; s < parts.length; s++) {
+				long bytes = 0;
+				for (long count : parts[s]) bytes += count;
+				rates[s] = rate(parts[s], bytes, lengths);
+				mean += rates[s] / parts.length;
+			}
+			for (double r : rates) spread += (r - mean) * (r - mean) / (parts.length - 1);
+			lower = Math.max(0, rate - z * Math.max(perByte, Math.sqrt(spread / parts.length)));
+		}
+		return new Estimate(size, n, used, entropy, lower, rate, CodeLengths.size(lengths));
+	}
+	private static double entropy(long[] counts, long n) {
+		double bits = 0;
+		for (long count : counts) if (count > 0) bits -= (double) count / n * Math.log((double) count / n);
+		return bits / Math.log(2);
+	}
+	/**
+	 * Returns the average code length of the counted bytes under the given code lengths.
+	 */
+	private static double rate(long[] counts, long n, int[] lengths) {
+		if (n == 0) return 0;
+		double bits = 0;
+		for (int s = 0; s < counts.length; s++) bits += (double) counts[s] * lengths[s];
+		return bits / n;
+	}
+	/**
+	 * Returns the standard normal quantile of p, for 0.5 <= p < 1 (Abramowitz and Stegun 26.2.23).
+	 */
+	private static double quantile(double p) {
+		if (p == 0.5) return 0;
+		double t = Math.sqrt(-2 * Math.log(1 - p));
+		return t - (2.515517 + 0.802853 * t + 0.010328 * t * t) / (1 + 1.432788 * t + 0.189269 * t * t + 0.001308 * t * t * t);
+	}
+	/**
+	 * Result of an estimate. Rates are in bits per byte.
+	 */
+	public static class Estimate {
+		private final long 		size, sampled;
+		private final int 		used;
+		private final double 	entropy, lowerBound, huffman;
+		private final long 		tableBits;
+		private Estimate(long size, long sampled, int used, double entropy, double lowerBound, double huffman, long tableBits) {
+			this.size = size;
+			this.sampled = sampled;
+			this.used = used;
+			this.entropy = entropy;
+			this.lowerBound = lowerBound;
+			this.huffman = huffman;
+			this.tableBits = tableBits;
+		}
+		public long getSize() { return size; }
+		public long getSampled() { return sampled; }
+		public int getUsedSymbols() { return used; }
+		public double getEntropy() { return entropy; }
+		/**
+		 * Returns the lower bound on the Huffman rate at the estimator's confidence.
+		 * @return (double)
+		 */
+		public double getLowerBound() { return lowerBound; }
+		/**
+		 * Returns the average code length of a Huffman code built for the samples.
+		 * @return (double)
+		 */
+		public double getHuffmanRate() { return huffman; }
+		/**
+		 * Returns the size of the sample's canonical code lengths, as {@link CodeLengths} writes them.
+		 * @return (long)
+		 */
+		public long getTableBits() { return tableBits; }
+		/**
+		 * Returns the predicted coded size of the whole file in bytes, without any header.
+		 * @return (long)
+		 */
+		public long getPredictedSize() { return (long) Math.ceil(size * huffman / HuffmanCodec.BITS_PER_WORD); }
+		/**
+		 * Returns whether the file may compress, given the header bits the chosen format adds.
+		 * False means that even the lower bound does not save space. An empty file returns true, as there is
+		 * nothing to estimate; the codec reports it as empty.
+		 *
+		 * @param headerBits (long)
+		 * @return (boolean)
+		 */
+		public boolean maySave(long headerBits) {
+			return size == 0 || (size * lowerBound + headerBits) / HuffmanCodec.BITS_PER_WORD < size;
+		}
+		@Override
+		public String toString() {
+			return String.format("%d of %d bytes sampled, entropy %.3f bits/byte, Huffman %.3f (>= %.3f) bits/byte, predicted %d bytes",
+					sampled, size, entropy, huffman, lowerBound, getPredictedSize());
+		}
+	}
+}
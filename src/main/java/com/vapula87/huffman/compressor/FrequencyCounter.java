@@ -0,0 +1,112 @@
+package com.vapula87.huffman.compressor;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import com.vapula87.huffman.utilities.ProgressCounter;
+import com.vapula87.huffman.utilities.ThreadUsage;
+/**
+ * Parallel byte-frequency counter.<br><br>
+ *
+ * The file is memory-mapped in slices that are counted concurrently on a ForkJoinPool.<br>
+ * Each slice is copied out in 64 KB chunks and counted into four interleaved histograms, so
+ * consecutive equal bytes do not serialize on the same counter. The slices are merged at the end.
+ *
+ * @author Michael Hackett
+ */
+public class FrequencyCounter {
+	public static final int 		SLICE_SIZE = 1 << 24, MIN_SLICE = 1 << 20;
+	private static final int 		STRIPES = 4, CHUNK = 1 << 16;
+	private final ForkJoinPool 		pool;
+	private ProgressCounter 		progress;
+	private ThreadUsage 			usage;
+	/**
+	 * Creates a counter running on the given pool.
+	 * @param pool (ForkJoinPool)
+	 */
+	public FrequencyCounter(ForkJoinPool pool) { this.pool = pool; }
+	/**
+	 * Counts every byte value in the file.
+	 *
+	 * @param file (Path)
+	 * @return (long[]) 256 counts indexed by byte value
+	 * @throws IOException
+	 */
+	public long[] count(Path file) throws IOException {
+		long[] totals = new long[HuffmanCodec.MAX_COUNT];
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			long size = channel.size();
+			long slice = Math.max(MIN_SLICE, Math.min(SLICE_SIZE, size / (pool.getParallelism() * 4L) + 1));
+			List<ForkJoinTask<long[]>> tasks = new ArrayList<>();
+			for (long pos = 0; pos < size; pos += slice) {
+				long start = pos, len = Math.min(slice, size - pos);
+				tasks.add(pool.submit(() -> countSlice(channel, start, len)));
+			}
+			for (ForkJoinTask<long[]> task : tasks) {
+				long[] part = BlockCodec.join(task);
+				for (int x = 0; x < totals.length; x++) totals[x] += part[x];
+			}
+		}
+		return totals;
+	}
+	/**
+	 * Counts one mapped slice of the file.
+	 */
+	private long[] countSlice(FileChannel channel, long start, long len) throws IOException {
+		long cpu = ThreadUsage.cpuTime(), memory = ThreadUsage.allocated();
+		MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, start, len);
+		int[] stripes = new int[STRIPES * HuffmanCodec.MAX_COUNT];
+		byte[] chunk = new byte[CHUNK];
+		while (map.hasRemaining()) {
+			int n = Math.min(CHUNK, map.remaining()), w = 0;
+			map.get(chunk, 0, n);
+			for (; w + 3 < n; w += 4) {
+				stripes[chunk[w] & 0xFF]++;
+				stripes[256 + (chunk[w + 1] & 0xFF)]++;
+				stripes[512 + (chunk[w + 2] & 0xFF)]++;
+				stripes[768 + (chunk[w + 3] & 0xFF)]++;
+			}
+			for (; w < n; w++) stripes[chunk[w] & 0xFF]++;
+		}
+		long[] part = new long[HuffmanCodec.MAX_COUNT];
+		for (int x = 0; x < stripes.length; x++) part[x & 0xFF] += stripes[x];
+		if (progress != null) progress.add(len);
+		if (usage != null) usage.add(cpu, memory);
+		return part;
+	}
+	/**
+	 * Converts 64-bit counts into counts for {@link com.vapula87.huffman.structures.ITreeMaker},
+	 * halving them as often as needed to keep their sum below 2^30. Symbols that occur stay nonzero.
+	 *
+	 * @param totals (long[])
+	 * @return (int[])
+	 */
+	public static int[] toCounts(long[] totals) {
+		long sum = 0;
+		for (long count : totals) sum += count;
+		int shift = 0;
+		while ((sum >>> shift) > (1 << 30)) shift++;
+		int[] counts = new int[totals.length];
+		for (int x = 0; x < totals.length; x++) {
+			if (totals[x] > 0) counts[x] = (int) Math.max(1, totals[x] >>> shift);
+		}
+		return counts;
+	}
+	/**
+	 * Sets the counter that each counted slice is added to.
+	 * @param progress (ProgressCounter) or null
+	 */
+	public void setProgress(ProgressCounter progress) { this.progress = progress; }
+	/**
+	 * Sets the usage that each slice adds its CPU time and allocations to.
+	 * @param usage (ThreadUsage) or null
+	 */
+	public void setUsage(ThreadUsage usage) { this.usage = usage; }
+}
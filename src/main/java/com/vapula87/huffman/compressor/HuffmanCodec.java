@@ -0,0 +1,840 @@
+package com.vapula87.huffman.compressor;
+
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+import com.vapula87.huffman.compressor.CodecMetrics.Phase;
+import com.vapula87.huffman.compressor.CodecMetrics.Span;
+import com.vapula87.huffman.interfaces.Entry;
+import com.vapula87.huffman.interfaces.IMetricsListener;
+import com.vapula87.huffman.interfaces.IProgressListener;
+import com.vapula87.huffman.structures.CodeLengthBuilder;
+import com.vapula87.huffman.structures.CodeLengths;
+import com.vapula87.huffman.structures.CodeTable;
+import com.vapula87.huffman.structures.DecodeTable;
+import com.vapula87.huffman.structures.ITreeMaker;
+import com.vapula87.huffman.structures.PackageMerge;
+import com.vapula87.huffman.structures.SortedTableMap;
+import com.vapula87.huffman.utilities.BitReader;
+import com.vapula87.huffman.utilities.BitWriter;
+import com.vapula87.huffman.utilities.BlockRing;
+import com.vapula87.huffman.utilities.ChannelInput;
+import com.vapula87.huffman.utilities.PipelinedInput;
+import com.vapula87.huffman.utilities.PipelinedOutput;
+import com.vapula87.huffman.utilities.ProgressCounter;
+import com.vapula87.huffman.utilities.ThreadUsage;
+/**
+ * Headless Huffman compression engine.<br><br>
+ *
+ * Holds all of the codec logic that used to live in the JavaFX controller, so it can be
+ * driven from the command line, from services or from the GUI. One instance handles one file.<br>
+ * Files are read ahead and written behind by their own threads ({@link PipelinedInput},
+ * {@link PipelinedOutput}), so the coding thread works in a three-stage pipeline with the disk.<br>
+ * Every operation records {@link CodecMetrics}, which are handed to the metrics listener when it succeeds.
+ * Progress is a byte counter advanced once per block ({@link #getProgress()}); a progress listener is
+ * sent its value every REPORT_MILLIS while it moves.
+ *
+ * @author Michael Hackett
+ */
+public class HuffmanCodec {
+	public static final byte[] 				MAGIC_NUM = new byte[]{ 0,0,0,0,1,1,1,1,0,0,0,1,1,1,0,1 };
+	public static final int 				MAX_COUNT = 256, MAX_ITEMS = 513;
+	public static final int 				BITS_PER_WORD = 8, BMASK = 1;
+	public static final int 				PSEUDO_EOF = (1 << BITS_PER_WORD);
+	public static final int 				FORMAT_LEGACY = 0, FORMAT_CANONICAL = 1, FORMAT_BLOCK = 2, FORMAT_ADAPTIVE = 3, FORMAT_INDEXED = 4, FORMAT_SHARED = 5;
+	public static final String 				EXTENSION = ".huff";
+	public static final long 				REPORT_MILLIS = 100;
+	private int[] 							counts;
+	private long[] 							totals;
+	private long 							byteTotal = 0;
+	private int 							format = FORMAT_CANONICAL, readFormat = -1, blockSize = BlockCodec.DEFAULT_BLOCK_SIZE;
+	private int 							maxCodeLength = 0;
+	private double 							limitLoss = 0;
+	private int 							models = 0, transforms = 0, tableId;
+	private TableRegistry 					registry;
+	private long 							fileSize = 0, bytesRead;
+	private boolean 						forcedComp;
+	private Path 							counted, estimated;
+	private CompressibilityEstimator 		estimator = new CompressibilityEstimator();
+	private CompressibilityEstimator.Estimate estimate;
+	private ITreeMaker 						tree;
+	private CodeTable 						codeTable;
+	private SortedTableMap<Integer, String> map;
+	private IProgressListener 				listener;
+	private final ProgressCounter 			progress = new ProgressCounter();
+	private IMetricsListener 				metricsListener;
+	private CodecMetrics 					metrics;
+	private ForkJoinPool 					pool = ForkJoinPool.commonPool();
+	private BlockRing 						readQueue, writeQueue;
+	/**
+	 * Counts the number of unique bytes in a file. Stores the information in an integer array.<br>
+	 * The file is memory-mapped and counted in parallel slices by {@link FrequencyCounter}.
+	 *
+	 * @param in (Path)
+	 * @return (long) total number of bytes read
+	 * @throws IOException
+	 */
+	public long countAll(Path in) throws IOException {
+		tree = null;
+		codeTable = null;
+		map = null;
+		byteTotal = 0;
+		metrics = new CodecMetrics("compress", in.toString());
+		Span span = metrics.start(Phase.COUNT);
+		try {
+			fileSize = Files.size(in);
+			FrequencyCounter counter = new FrequencyCounter(pool);
+			counter.setProgress(progress);
+			counter.setUsage(metrics.workers(Phase.COUNT));
+			ProgressCounter.Reporter reporter = track(fileSize);
+			try { totals = counter.count(in); }
+			finally { untrack(reporter); }
+			for (long count : totals) byteTotal += count;
+			counts = FrequencyCounter.toCounts(totals);
+		}
+		catch (IOException e) { throw new IOException("Compression failed: Error loading file."); }
+		finally { span.close(); }
+		counted = in;
+		return byteTotal;
+	}
+	/**
+	 * Builds the Huffman tree and code table from the current counts.<br>
+	 * The canonical format needs only code lengths, so it skips the tree and uses {@link CodeLengthBuilder},
+	 * limits the lengths to the maximum code length, if one is set, and assigns the codes canonically.
+	 *
+	 * @return (ITreeMaker) the tree, or null when only code lengths were built
+	 */
+	public ITreeMaker buildTree() {
+		Span span = metrics().start(Phase.TREE);
+		try { return makeTree(); }
+		finally { span.close(); }
+	}
+	private ITreeMaker makeTree() {
+		limitLoss = 0;
+		if (format == FORMAT_LEGACY) {
+			tree = new ITreeMaker(counts);
+			tree.getTree().encode(null);
+			codeTable = CodeTable.fromMap(tree.getTree().getMap(), PSEUDO_EOF + 1);
+		}
+		else {
+			tree = null;
+			int[] weights = Arrays.copyOf(counts, PSEUDO_EOF + 1);
+			weights[PSEUDO_EOF] = 1;
+			int[] lengths = new CodeLengthBuilder(PSEUDO_EOF + 1).build(weights, new int[PSEUDO_EOF + 1]);
+			codeTable = CodeTable.canonical(limitLengths(weights, lengths));
+		}
+		map = codeTable.toMap();
+		return tree;
+	}
+	/**
+	 * Rebuilds the lengths with {@link PackageMerge} if any is longer than the maximum code length,
+	 * recording how much larger that makes the coded data.
+	 *
+	 * @param weights (int[]) counts including PSEUDO_EOF
+	 * @param lengths (int[]) unlimited code lengths
+	 * @return (int[])
+	 */
+	private int[] limitLengths(int[] weights, int[] lengths) {
+		if (maxCodeLength <= 0 || PackageMerge.maxLength(lengths) <= maxCodeLength) return lengths;
+		long[] all = Arrays.copyOf(totals, PSEUDO_EOF + 1);
+		all[PSEUDO_EOF] = 1;
+		int[] limited = PackageMerge.lengths(weights, maxCodeLength);
+		long optimal = PackageMerge.cost(all, lengths);
+		limitLoss = (double) (PackageMerge.cost(all, limited) - optimal) / optimal;
+		return limited;
+	}
+	/**
+	 * Compresses a file next to itself, replacing its extension with .huff.
+	 *
+	 * @param in (Path)
+	 * @return (Path) the compressed file
+	 * @throws IOException
+	 */
+	public Path compress(Path in) throws IOException { return compressInto(in, null); }
+	/**
+	 * Compresses a file into the given directory, replacing its extension with .huff.
+	 *
+	 * @param in (Path)
+	 * @param dir (Path) target directory, or null for the file's own directory
+	 * @return (Path) the compressed file
+	 * @throws IOException
+	 */
+	public Path compressInto(Path in, Path dir) throws IOException {
+		Path out = dir == null ? in.resolveSibling(baseName(in) + EXTENSION) : dir.resolve(baseName(in) + EXTENSION);
+		if (Files.exists(out)) throw new IOException("Compression failed: " + out + " already exists");
+		compress(in, out);
+		return out;
+	}
+	/**
+	 * Compresses the file.<br><br>
+	 *
+	 * Operations in order:<p>
+	 * ** Writes the magic number (and format number, unless legacy).<br>
+	 * ** Writes file extension.<br>
+	 * ** Writes the dictionary (breadth-first tree, or canonical code lengths).<br>
+	 * ** Writes encodings (with PSEUDO_EOF).</p>
+	 *
+	 * The output must not be the input, and unless compression is forced it must not exist yet.
+	 * An empty file is rejected in every format, forced or not.<br>
+	 * Unless compression is forced, a few samples of the file are checked with the {@link CompressibilityEstimator}
+	 * first, so a file that clearly will not shrink is rejected before it is read in full.<br>
+	 * The block, indexed and adaptive formats skip the counting pass and the savings check: each block carries
+	 * its own table and is stored as-is when coding would not shrink it, and the adaptive tree needs no table.
+	 * Unless forced, an adaptive file is still screened by the estimator and rejected afterwards if it did not shrink.
+	 * The shared format codes with a trained table from the {@link TableRegistry} and stores only the table's ID.
+	 * It needs no table of its own, but unless forced the file is still counted and its size under the shared
+	 * table is checked, since a table trained on other data can make a file larger.
+	 *
+	 * @param in (Path)
+	 * @param out (Path)
+	 * @throws IOException
+	 */
+	public void compress(Path in, Path out) throws IOException {
+		checkExtension(extension(in));
+		boolean created = checkOutput(in, out, "Compression failed: ");
+		if (Files.size(in) == 0) throw new IOException("Compression failed: File is empty.");
+		if (!singlePass()) {
+			if (!forcedComp && !in.equals(counted) && !estimateSavings(in))
+				throw new IOException("Compressing this file does not save space. Enable forced compression.");
+			if (!in.equals(counted)) countAll(in);
+			if (byteTotal == 0) throw new IOException("Compression failed: File is empty.");
+			if (codeTable == null) buildTree();
+			if (!forcedComp && !checkSavings(in))
+				throw new IOException("Compressing this file does not save space. Enable forced compression.");
+		}
+		else if (format == FORMAT_SHARED && !forcedComp) {
+			if (!in.equals(counted)) countAll(in);
+			if (!checkSavings(in, sharedTable("Compression failed: ").getLengths()))
+				throw new IOException("Compressing this file does not save space. Enable forced compression.");
+		}
+		else {
+			if (format == FORMAT_ADAPTIVE && !forcedComp && !estimateSavings(in))
+				throw new IOException("Compressing this file does not save space. Enable forced compression.");
+			fileSize = Files.size(in);
+			metrics = new CodecMetrics("compress", in.toString());
+		}
+		metrics.setFormat(format);
+		if (format == FORMAT_SHARED) sharedTable("Compression failed: ");
+		boolean success = false;
+		ProgressCounter.Reporter reporter = track(fileSize);
+		try (PipelinedInput buffRead = openInput(in, metrics.workers(Phase.ENCODE));
+			 PipelinedOutput write = openOutput(out, metrics.workers(Phase.ENCODE))) {
+			readQueue = buffRead.getQueue();
+			writeQueue = write.getQueue();
+			BitWriter writer = new BitWriter(write);
+			Span header = metrics.start(Phase.HEADER);
+			try {
+				writeHeader(writer, format, extension(in));
+				if (!singlePass()) {
+					if (format == FORMAT_LEGACY) writeTree(writer);
+					else CodeLengths.write(writer, codeTable.getLengths());
+				}
+			}
+			finally { header.close(); }
+			if (singlePass()) compressStream(buffRead, writer);
+			else {
+				metrics.setLengths(codeTable.getLengths());
+				Span span = metrics.start(Phase.ENCODE);
+				try {
+					encode(buffRead, writer, codeTable);
+					writer.flush();
+				}
+				finally { span.close(); }
+			}
+			success = true;
+		}
+		catch (IOException e) { throw new IOException("Compression failed: Error in read/write process."); }
+		finally {
+			untrack(reporter);
+			if (!success && created) Files.deleteIfExists(out);
+		}
+		if (format == FORMAT_ADAPTIVE && !forcedComp && Files.size(out) >= fileSize) {
+			Files.delete(out);
+			throw new IOException("Compressing this file does not save space. Enable forced compression.");
+		}
+		finish(fileSize, Files.size(out));
+	}
+	/**
+	 * Compresses a stream of unknown length in a single pass, for pipes and sockets.<br>
+	 * Only the block, indexed and adaptive formats can be written this way. Neither stream is closed.
+	 *
+	 * @param in (InputStream)
+	 * @param out (OutputStream)
+	 * @param extension (String) extension to restore on decompression, including the leading dot
+	 * @return (long) uncompressed bytes read
+	 * @throws IOException
+	 */
+	public long compress(InputStream in, OutputStream out, String extension) throws IOException {
+		if (!singlePass()) throw new IOException("Compression failed: Only the block, indexed, adaptive and shared formats can compress a stream.");
+		checkExtension(extension);
+		fileSize = 0;
+		metrics = new CodecMetrics("compress", "");
+		metrics.setFormat(format);
+		ProgressCounter.Reporter reporter = track(ProgressCounter.UNKNOWN);
+		try {
+			BitWriter writer = new BitWriter(out);
+			Span span = metrics.start(Phase.HEADER);
+			try { writeHeader(writer, format, extension); }
+			finally { span.close(); }
+			long read = compressStream(in, writer);
+			finish(read, writer.getBytesWritten());
+			return read;
+		}
+		catch (IOException e) { throw new IOException("Compression failed: Error in read/write process."); }
+		finally { untrack(reporter); }
+	}
+	/**
+	 * Writes the body of a single-pass format and flushes the writer.
+	 */
+	private long compressStream(InputStream in, BitWriter writer) throws IOException {
+		Span span = metrics.start(Phase.ENCODE);
+		try { return encodeStream(in, writer); }
+		finally { span.close(); }
+	}
+	private long encodeStream(InputStream in, BitWriter writer) throws IOException {
+		long read;
+		if (format == FORMAT_BLOCK || format == FORMAT_INDEXED) {
+			BlockCodec blocks = new BlockCodec(pool, blockSize);
+			blocks.setProgress(progress);
+			blocks.setUsage(metrics.workers(Phase.ENCODE));
+			blocks.setMaxLength(maxCodeLength);
+			blocks.setIndexed(format == FORMAT_INDEXED);
+			blocks.setModels(models);
+			blocks.setTransforms(transforms);
+			read = blocks.compress(in, writer);
+			if (format == FORMAT_INDEXED) blocks.writeIndex(writer);
+			limitLoss = blocks.getLimitLoss();
+		}
+		else if (format == FORMAT_SHARED) {
+			CodeTable shared = sharedTable("Compression failed: ");
+			metrics.setLengths(shared.getLengths());
+			writer.write(tableId & 0xFFFFFFFFL, 32);
+			read = encode(in, writer, shared);
+		}
+		else {
+			AdaptiveCodec adaptive = new AdaptiveCodec();
+			adaptive.setProgress(progress);
+			read = adaptive.compress(in, writer);
+		}
+		writer.flush();
+		return read;
+	}
+	/**
+	 * Writes the code of every byte in the stream, then PSEUDO_EOF.
+	 */
+	private long encode(InputStream in, BitWriter writer, CodeTable table) throws IOException {
+		long[] codes = table.getCodes();
+		int[] lengths = table.getLengths();
+		byte[] block = new byte[1 << 16];
+		int bytes;
+		long total = 0;
+		while ((bytes = in.read(block)) != -1) { //Writing encoded values
+			for (int w = 0; w < bytes; w++) {
+				int symbol = block[w] & 0xFF;
+				writer.write(codes[symbol], lengths[symbol]);
+			}
+			total += bytes;
+			progress.set(total);
+		}
+		writer.write(codes[PSEUDO_EOF], lengths[PSEUDO_EOF]); //Writes eof
+		return total;
+	}
+	/**
+	 * Returns the shared table selected by {@link #setTable}, with the given prefix on any error.
+	 */
+	private CodeTable sharedTable(String failure) throws IOException {
+		try { return registry().codeTable(tableId); }
+		catch (IOException e) { throw new IOException(failure + e.getMessage()); }
+	}
+	private TableRegistry registry() { return registry != null ? registry : TableRegistry.getDefault(); }
+	/**
+	 * Decompresses a .huff file next to itself, restoring the stored extension.
+	 *
+	 * @param in (Path)
+	 * @return (Path) the restored file
+	 * @throws IOException
+	 */
+	public Path decompress(Path in) throws IOException { return decompressInto(in, null); }
+	/**
+	 * Decompresses a .huff file into the given directory, restoring the stored extension.
+	 *
+	 * @param in (Path)
+	 * @param dir (Path) target directory, or null for the file's own directory
+	 * @return (Path) the restored file
+	 * @throws IOException
+	 */
+	public Path decompressInto(Path in, Path dir) throws IOException {
+		String extension;
+		try (InputStream buffRead = new ChannelInput(FileChannel.open(in, StandardOpenOption.READ))) {
+			extension = readHeader(new BitReader(buffRead, 1 << 10));
+		}
+		Path out = dir == null ? in.resolveSibling(baseName(in) + extension) : dir.resolve(baseName(in) + extension);
+		if (Files.exists(out)) throw new IOException("Decompression failed: " + out + " already exists.");
+		decompress(in, out);
+		return out;
+	}
+	/**
+	 * Decompresses the file.<br><br>
+	 *
+	 * Operations in order:<p>
+	 *  ** Verify magic number and format.<br>
+	 *  ** Get the file extension.<br>
+	 *  ** Rebuild the Huffman tree, or the canonical codes from their lengths.<br>
+	 *  ** Decode the values through a lookup table until PSEUDO_EOF reached.</p>
+	 *
+	 * The output must not be the input, and unless forced it must not exist yet.
+	 *
+	 * @param in (Path)
+	 * @param out (Path)
+	 * @throws IOException
+	 */
+	public void decompress(Path in, Path out) throws IOException {
+		boolean created = checkOutput(in, out, "Decompression failed: ");
+		fileSize = Files.size(in);
+		metrics = new CodecMetrics("decompress", in.toString());
+		boolean success = false;
+		ProgressCounter.Reporter reporter = track(fileSize);
+		try (PipelinedInput buffRead = openInput(in, metrics.workers(Phase.DECODE));
+			 PipelinedOutput write = openOutput(out, metrics.workers(Phase.DECODE))) {
+			readQueue = buffRead.getQueue();
+			writeQueue = write.getQueue();
+			decode(buffRead, write);
+			success = true;
+		}
+		catch (IOException e) {
+			if (e.getMessage() != null && e.getMessage().startsWith("Decompression failed")) throw e;
+			throw new IOException("Decompression failed: Error in read/write process.");
+		}
+		finally {
+			untrack(reporter);
+			if (!success && created) Files.deleteIfExists(out);
+		}
+		finish(fileSize, Files.size(out));
+	}
+	/**
+	 * Checks that the output is not the input file and, unless forced, does not exist yet.<br>
+	 * A file that already exists is only overwritten, never deleted, if the operation then fails.
+	 *
+	 * @param in (Path)
+	 * @param out (Path)
+	 * @param failure (String) prefix of the error message
+	 * @return (boolean) true if the output will be created by this operation
+	 * @throws IOException
+	 */
+	private boolean checkOutput(Path in, Path out, String failure) throws IOException {
+		if (!Files.exists(out)) return true;
+		if (Files.isSameFile(in, out)) throw new IOException(failure + out + " is the input file.");
+		if (!forcedComp) throw new IOException(failure + out + " already exists. Enable forced compression to overwrite it.");
+		return false;
+	}
+	/**
+	 * Decompresses a stream in any format, for pipes and sockets. Neither stream is closed.
+	 *
+	 * @param in (InputStream)
+	 * @param out (OutputStream)
+	 * @return (String) the stored extension, including the leading dot
+	 * @throws IOException
+	 */
+	public String decompress(InputStream in, OutputStream out) throws IOException {
+		fileSize = 0;
+		metrics = new CodecMetrics("decompress", "");
+		CountingOutput counted = new CountingOutput(out);
+		String extension;
+		ProgressCounter.Reporter reporter = track(ProgressCounter.UNKNOWN);
+		try { extension = decode(in, counted); }
+		finally { untrack(reporter); }
+		finish(bytesRead, counted.count);
+		return extension;
+	}
+	/**
+	 * Reads the header and decodes the body of any format.
+	 */
+	private String decode(InputStream in, OutputStream write) throws IOException {
+		try {
+			BitReader reader = new BitReader(in);
+			String extension;
+			DecodeTable table = null;
+			Span header = metrics.start(Phase.HEADER);
+			try {
+				extension = readHeader(reader);
+				metrics.setFormat(readFormat);
+				CodeTable codes = null;
+				if (readFormat == FORMAT_LEGACY) codes = CodeTable.fromMap(readTree(reader), PSEUDO_EOF + 1);
+				else if (readFormat == FORMAT_CANONICAL) codes = CodeTable.canonical(CodeLengths.read(reader, PSEUDO_EOF + 1));
+				else if (readFormat == FORMAT_SHARED) {
+					int id = reader.readBits(32);
+					table = sharedDecoder(registry(), id);
+					codes = registry().codeTable(id);
+				}
+				if (codes != null) {
+					if (table == null) table = new DecodeTable(codes);
+					metrics.setLengths(codes.getLengths());
+				}
+			}
+			finally { header.close(); }
+			Span span = metrics.start(Phase.DECODE);
+			try { decodeBody(reader, write, table); }
+			finally { span.close(); }
+			bytesRead = reader.getBytesRead();
+			return extension;
+		}
+		catch (IOException e) {
+			if (e.getMessage() != null && e.getMessage().startsWith("Decompression failed")) throw e;
+			throw new IOException("Decompression failed: Error in read/write process.");
+		}
+	}
+	/**
+	 * Decodes the body of any format, given the table of the single-table formats.
+	 */
+	private void decodeBody(BitReader reader, OutputStream write, DecodeTable table) throws IOException {
+		if (readFormat == FORMAT_BLOCK || readFormat == FORMAT_INDEXED) {
+			BlockCodec blocks = new BlockCodec(pool, blockSize);
+			blocks.setProgress(progress);
+			blocks.setUsage(metrics.workers(Phase.DECODE));
+			blocks.decompress(reader, write);
+			return;
+		}
+		if (readFormat == FORMAT_ADAPTIVE) {
+			AdaptiveCodec adaptive = new AdaptiveCodec();
+			adaptive.setProgress(progress);
+			adaptive.decompress(reader, write);
+			return;
+		}
+		byte[] block = new byte[1 << 16];
+		int ascii, used = 0;
+		while ((ascii = table.decode(reader)) != PSEUDO_EOF) {
+			block[used++] = (byte) ascii;
+			if (used == block.length) {
+				write.write(block, 0, used);
+				used = 0;
+				progress.set(reader.getBytesRead());
+			}
+		}
+		write.write(block, 0, used);
+	}
+	/**
+	 * Ends the metrics of the current operation and hands them to the metrics listener.
+	 */
+	private void finish(long bytesIn, long bytesOut) {
+		metrics.finish(bytesIn, bytesOut);
+		if (metricsListener != null) metricsListener.completed(metrics);
+	}
+	/**
+	 * Returns the metrics of the current operation, starting them if the tree is built without counting first.
+	 */
+	private CodecMetrics metrics() {
+		if (metrics == null) metrics = new CodecMetrics("compress", "");
+		return metrics;
+	}
+	/**
+	 * Counts the bytes written through it, for the metrics of stream decompression.
+	 */
+	private static class CountingOutput extends FilterOutputStream {
+		private long count;
+		private CountingOutput(OutputStream out) { super(out); }
+		@Override
+		public void write(int b) throws IOException {
+			out.write(b);
+			count++;
+		}
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			out.write(b, off, len);
+			count += len;
+		}
+	}
+	/**
+	 * Returns the cached decode table for a shared-format file.
+	 */
+	static DecodeTable sharedDecoder(TableRegistry registry, int id) throws IOException {
+		try { return registry.decodeTable(id); }
+		catch (IOException e) { throw new IOException("Decompression failed: " + e.getMessage()); }
+	}
+	/**
+	 * Verifies the magic number, reads the format number and the stored file extension.<br>
+	 * Legacy files have no format number; their extension starts right away with '.' or ':'.
+	 * The format read is kept apart from the one set for compression; see {@link #getReadFormat()}.
+	 *
+	 * @param reader (BitReader)
+	 * @return (String) the extension, including the leading dot
+	 * @throws IOException
+	 */
+	String readHeader(BitReader reader) throws IOException {
+		if (reader.readBits(MAGIC_NUM.length) != new ITreeMaker().convert(MAGIC_NUM))
+			throw new IOException("Decompression failed: File corrupted.");
+		StringBuilder extension = new StringBuilder();
+		int bytes = reader.readBits(BITS_PER_WORD);
+		if (bytes == '.' || bytes == ':') readFormat = FORMAT_LEGACY;
+		else if (bytes >= FORMAT_CANONICAL && bytes <= FORMAT_SHARED) {
+			readFormat = bytes;
+			bytes = reader.readBits(BITS_PER_WORD);
+		}
+		else throw new IOException("Decompression failed: Unknown format " + bytes + ".");
+		for (; bytes != ':'; bytes = reader.readBits(BITS_PER_WORD)) extension.append((char) bytes);
+		return extension.toString();
+	}
+	/**
+	 * Writes the magic number, the format number (unless legacy) and the file extension.
+	 *
+	 * @param writer (BitWriter)
+	 * @param format (int)
+	 * @param extension (String)
+	 * @throws IOException
+	 */
+	static void writeHeader(BitWriter writer, int format, String extension) throws IOException {
+		checkExtension(extension);
+		writer.write(new ITreeMaker().convert(MAGIC_NUM), MAGIC_NUM.length);
+		if (format != FORMAT_LEGACY) writer.write(format, BITS_PER_WORD);
+		extension += ":";
+		for (int w = 0; w < extension.length(); w++) writer.write(extension.charAt(w), BITS_PER_WORD); //Write file extension
+	}
+	/**
+	 * Checks that the extension can be stored: one byte per character, ended by ':'.
+	 *
+	 * @param extension (String)
+	 * @throws IOException if a character is above 0xFF or is ':'
+	 */
+	static void checkExtension(String extension) throws IOException {
+		for (int w = 0; w < extension.length(); w++) {
+			char c = extension.charAt(w);
+			if (c > 0xFF || c == ':') throw new IOException("Compression failed: The file extension cannot be stored.");
+		}
+	}
+	/**
+	 * Returns whether the format is written in one pass, without counting first.
+	 * @return (boolean)
+	 */
+	private boolean singlePass() { return format == FORMAT_BLOCK || format == FORMAT_ADAPTIVE || format == FORMAT_INDEXED || format == FORMAT_SHARED; }
+	/**
+	 * Writes the legacy dictionary: the tree in breadth-first order, padded to MAX_ITEMS entries.
+	 *
+	 * @param writer (BitWriter)
+	 * @throws IOException
+	 */
+	private void writeTree(BitWriter writer) throws IOException {
+		int items = 0;
+		for (Entry nodes : tree.getTree()) {
+			if (nodes.getValue() == null) writer.writeBit(0);
+			else writer.write(1 << BITS_PER_WORD | ((int) nodes.getValue() & 0xFF), BITS_PER_WORD + 1);
+			items++;
+		}
+		for (; items < MAX_ITEMS; items++) writer.writeBit(0);  //Filler for keeping track of location in bit stream
+	}
+	/**
+	 * Reads the legacy dictionary and rebuilds the Huffman tree from it.
+	 *
+	 * @param reader (BitReader)
+	 * @return (SortedTableMap) the rebuilt tree's codes
+	 * @throws IOException
+	 */
+	SortedTableMap<Integer, String> readTree(BitReader reader) throws IOException {
+		tree = new ITreeMaker();
+		for (int items = 0; items < MAX_ITEMS; ) items += tree.addStack(reader.readBit());
+		try {
+			tree.resize();
+			tree.reStack();
+			tree.rebuild();
+		}
+		catch (RuntimeException e) { throw new IOException("Decompression failed: File corrupted."); }
+		tree.getTree().encode(null);
+		return tree.getTree().getMap();
+	}
+	/**
+	 * Estimates from samples whether compression may save any space, including the header of the chosen format.<br>
+	 * Only a file that will not shrink at the estimator's confidence returns false. {@link #checkSavings}
+	 * gives the exact answer after the counting pass.
+	 *
+	 * @param in (Path)
+	 * @return (boolean) true if there is no estimator
+	 * @throws IOException
+	 */
+	public boolean estimateSavings(Path in) throws IOException {
+		if (estimator == null) return true;
+		if (!in.equals(estimated)) {
+			estimate = estimator.estimate(in);
+			estimated = in;
+		}
+		long bitTotal = MAGIC_NUM.length;
+		bitTotal += BITS_PER_WORD * (extension(in).length() + 1);
+		if (format == FORMAT_LEGACY) bitTotal += MAX_ITEMS + BITS_PER_WORD * (estimate.getUsedSymbols() + 1);
+		else bitTotal += BITS_PER_WORD + estimate.getTableBits();
+		return estimate.maySave(bitTotal);
+	}
+	/**
+	 * Calculates whether compression will save any space, including the header of the chosen format.
+	 *
+	 * @param in (Path)
+	 * @return (boolean)
+	 */
+	public boolean checkSavings(Path in) { return checkSavings(in, codeTable.getLengths()); }
+	/**
+	 * Calculates whether coding the counted file with the given lengths will save any space.<br>
+	 * The shared format stores the table's ID in place of the lengths.
+	 */
+	private boolean checkSavings(Path in, int[] lengths) {
+		long bitTotal = MAGIC_NUM.length;
+		bitTotal += BITS_PER_WORD * (extension(in).length() + 1);
+		if (format == FORMAT_LEGACY) bitTotal += MAX_ITEMS + BITS_PER_WORD * map.size();
+		else if (format == FORMAT_SHARED) bitTotal += BITS_PER_WORD + 32;
+		else bitTotal += BITS_PER_WORD + CodeLengths.size(lengths);
+		for (int key = 0; key < MAX_COUNT; key++) bitTotal += totals[key] * lengths[key];
+		bitTotal += lengths[PSEUDO_EOF];
+		return ((bitTotal + BITS_PER_WORD - 1) / BITS_PER_WORD < fileSize);
+	}
+	/**
+	 * Starts a new pass of the progress counter and, if there is a listener, reports it until {@link #untrack}.
+	 *
+	 * @param total (long) bytes the pass will process, or ProgressCounter.UNKNOWN
+	 * @return (ProgressCounter.Reporter) or null without a listener
+	 */
+	private ProgressCounter.Reporter track(long total) {
+		progress.reset(total);
+		return listener == null ? null : progress.report(listener, REPORT_MILLIS);
+	}
+	/**
+	 * Stops a reporter from {@link #track}, sending the final count.
+	 * @param reporter (ProgressCounter.Reporter) or null
+	 */
+	private void untrack(ProgressCounter.Reporter reporter) { if (reporter != null) reporter.close(); }
+	/**
+	 * Opens a file for reading through a FileChannel, read ahead in pooled direct buffers.
+	 * @param file (Path)
+	 * @return (PipelinedInput)
+	 * @throws IOException
+	 */
+	public static PipelinedInput openInput(Path file) throws IOException { return openInput(file, null); }
+	/**
+	 * Opens a file for reading like {@link #openInput(Path)}, adding the reader thread's usage to the given one when it ends.
+	 * @param file (Path)
+	 * @param usage (ThreadUsage) or null
+	 * @return (PipelinedInput)
+	 * @throws IOException
+	 */
+	public static PipelinedInput openInput(Path file, ThreadUsage usage) throws IOException {
+		return new PipelinedInput(FileChannel.open(file, StandardOpenOption.READ), usage);
+	}
+	/**
+	 * Creates or truncates a file for writing through a FileChannel, written behind from pooled direct buffers.
+	 * @param file (Path)
+	 * @return (PipelinedOutput)
+	 * @throws IOException
+	 */
+	public static PipelinedOutput openOutput(Path file) throws IOException { return openOutput(file, null); }
+	/**
+	 * Opens a file for writing like {@link #openOutput(Path)}, adding the writer thread's usage to the given one when it ends.
+	 * @param file (Path)
+	 * @param usage (ThreadUsage) or null
+	 * @return (PipelinedOutput)
+	 * @throws IOException
+	 */
+	public static PipelinedOutput openOutput(Path file, ThreadUsage usage) throws IOException {
+		return new PipelinedOutput(FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING), usage);
+	}
+	/**
+	 * Returns the file name without its extension.
+	 * @param file (Path)
+	 * @return (String)
+	 */
+	public static String baseName(Path file) {
+		String name = file.getFileName().toString();
+		return name.contains(".") ? name.substring(0, name.lastIndexOf(".")) : name;
+	}
+	/**
+	 * Returns the file extension, including the leading dot, or an empty string.
+	 * @param file (Path)
+	 * @return (String)
+	 */
+	public static String extension(Path file) {
+		String name = file.getFileName().toString();
+		return name.contains(".") ? name.substring(name.lastIndexOf(".")) : "";
+	}
+	public int[] getCounts() { return counts; }
+	public long getByteTotal() { return byteTotal; }
+	public SortedTableMap<Integer, String> getMap() { return map; }
+	public int getFormat() { return format; }
+	/**
+	 * Returns the format of the last header read, which does not change the format used for compression.
+	 * @return (int) or -1 if no header was read
+	 */
+	public int getReadFormat() { return readFormat; }
+	/**
+	 * Returns how much larger the coded data came out because of the maximum code length, as a fraction.
+	 * @return (double)
+	 */
+	public double getLimitLoss() { return limitLoss; }
+	public int getMaxCodeLength() { return maxCodeLength; }
+	/**
+	 * Returns the estimate from the last call to {@link #estimateSavings}.
+	 * @return (CompressibilityEstimator.Estimate) or null
+	 */
+	public CompressibilityEstimator.Estimate getEstimate() { return estimate; }
+	/**
+	 * Returns the queue between the reader thread and the coder from the last file operation.
+	 * @return (BlockRing) or null if only streams were used
+	 */
+	public BlockRing getReadQueue() { return readQueue; }
+	/**
+	 * Returns the queue between the coder and the writer thread from the last file operation.
+	 * @return (BlockRing) or null if only streams were used
+	 */
+	public BlockRing getWriteQueue() { return writeQueue; }
+	/**
+	 * Returns the metrics of the last operation, which are complete once it has returned.
+	 * @return (CodecMetrics) or null
+	 */
+	public CodecMetrics getMetrics() { return metrics; }
+	/**
+	 * Returns the progress of the current pass, for listeners that poll.
+	 * @return (ProgressCounter)
+	 */
+	public ProgressCounter getProgress() { return progress; }
+	public void setForced(boolean forcedComp) { this.forcedComp = forcedComp; }
+	public void setFormat(int format) { this.format = format; }
+	public void setBlockSize(int blockSize) { this.blockSize = blockSize; }
+	/**
+	 * Lets the block and indexed formats code blocks with the order-1 context model, 16-bit symbols
+	 * or LZ77 where that is smaller.
+	 * @param models (int) any of BlockCodec.TRY_ORDER1, BlockCodec.TRY_WIDE and BlockCodec.lz77(), or 0
+	 */
+	public void setModels(int models) { this.models = models; }
+	/**
+	 * Lets the block and indexed formats run RLE and/or BWT with move-to-front on each block
+	 * where that makes it smaller.
+	 * @param transforms (int) TransformPipeline stage flags, or 0
+	 */
+	public void setTransforms(int transforms) { this.transforms = transforms; }
+	/**
+	 * Selects the trained table that the shared format codes with.
+	 * @param tableId (int) an ID from {@link TableRegistry#train} or {@link TableRegistry#register}
+	 */
+	public void setTable(int tableId) { this.tableId = tableId; }
+	/**
+	 * Sets where shared tables are looked up, instead of {@link TableRegistry#getDefault()}.
+	 * @param registry (TableRegistry)
+	 */
+	public void setRegistry(TableRegistry registry) { this.registry = registry; }
+	/**
+	 * Limits code lengths in the canonical and block formats. The legacy and adaptive formats ignore it.
+	 * @param maxCodeLength (int) longest code allowed, or 0 for no limit
+	 */
+	public void setMaxCodeLength(int maxCodeLength) {
+		this.maxCodeLength = maxCodeLength;
+		codeTable = null;
+	}
+	/**
+	 * Sets the estimator that screens files before the counting pass.
+	 * @param estimator (CompressibilityEstimator) or null to always count the whole file
+	 */
+	public void setEstimator(CompressibilityEstimator estimator) {
+		this.estimator = estimator;
+		estimated = null;
+	}
+	public void setPool(ForkJoinPool pool) { this.pool = pool; }
+	public void setListener(IProgressListener listener) { this.listener = listener; }
+	public void setMetricsListener(IMetricsListener metricsListener) { this.metricsListener = metricsListener; }
+}
@@ -0,0 +1,142 @@
+package com.vapula87.huffman.compressor;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import com.vapula87.huffman.structures.AdaptiveHuffTree;
+import com.vapula87.huffman.structures.CodeLengths;
+import com.vapula87.huffman.structures.CodeTable;
+import com.vapula87.huffman.structures.DecodeTable;
+import com.vapula87.huffman.utilities.BitReader;
+/**
+ * Input stream filter that decompresses a .huff stream of any format.<br><br>
+ *
+ * The header is read when the stream is created. Block and indexed streams are decoded one block at a time;
+ * the other formats are decoded into a 64 KB buffer on demand, so memory stays bounded.<br>
+ * The underlying stream is read ahead in bulk, so it should not be read directly afterwards.
+ *
+ * @author Michael Hackett
+ */
+public class HuffmanInputStream extends FilterInputStream {
+	private final BitReader 	reader;
+	private final int 			format;
+	private final String 		extension;
+	private int 				blockSize;
+	private DecodeTable 		table;
+	private AdaptiveHuffTree 	adaptive;
+	private byte[] 				buffer = new byte[1 << 16];
+	private int 				pos = 0, limit = 0;
+	private boolean 			eof = false;
+	/**
+	 * Creates a decompressing stream and reads the .huff header. Shared tables come from
+	 * {@link TableRegistry#getDefault()}.
+	 *
+	 * @param in (InputStream)
+	 * @throws IOException if the header is missing or malformed
+	 */
+	public HuffmanInputStream(InputStream in) throws IOException { this(in, TableRegistry.getDefault()); }
+	/**
+	 * Creates a decompressing stream that looks up shared tables in the given registry.
+	 *
+	 * @param in (InputStream)
+	 * @param registry (TableRegistry)
+	 * @throws IOException if the header is missing or malformed, or the shared table is unknown
+	 */
+	public HuffmanInputStream(InputStream in, TableRegistry registry) throws IOException {
+		super(in);
+		reader = new BitReader(in);
+		HuffmanCodec codec = new HuffmanCodec();
+		extension = codec.readHeader(reader);
+		format = codec.getReadFormat();
+		switch (format) {
+			case HuffmanCodec.FORMAT_BLOCK:
+			case HuffmanCodec.FORMAT_INDEXED:
+				blockSize = reader.readBits(32);
+				if (!BlockCodec.validBlockSize(blockSize)) throw new IOException("Decompression failed: File corrupted.");
+				break;
+			case HuffmanCodec.FORMAT_ADAPTIVE:
+				adaptive = new AdaptiveHuffTree(HuffmanCodec.PSEUDO_EOF + 1);
+				break;
+			case HuffmanCodec.FORMAT_LEGACY:
+				table = DecodeTable.fromMap(codec.readTree(reader), HuffmanCodec.PSEUDO_EOF + 1);
+				break;
+			case HuffmanCodec.FORMAT_SHARED:
+				table = HuffmanCodec.sharedDecoder(registry, reader.readBits(32));
+				break;
+			default:
+				table = new DecodeTable(CodeTable.canonical(CodeLengths.read(reader, HuffmanCodec.PSEUDO_EOF + 1)));
+		}
+	}
+	@Override
+	public int read() throws IOException {
+		if (pos == limit && !fill()) return -1;
+		return buffer[pos++] & 0xFF;
+	}
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (off < 0 || len < 0 || off + len > b.length) throw new IndexOutOfBoundsException();
+		if (len == 0) return 0;
+		if (pos == limit && !fill()) return -1;
+		int n = Math.min(len, limit - pos);
+		System.arraycopy(buffer, pos, b, off, n);
+		pos += n;
+		return n;
+	}
+	@Override
+	public long skip(long n) throws IOException {
+		long skipped = 0;
+		while (skipped < n && (pos < limit || fill())) {
+			int step = (int) Math.min(n - skipped, limit - pos);
+			pos += step;
+			skipped += step;
+		}
+		return skipped;
+	}
+	@Override
+	public int available() { return limit - pos; }
+	@Override
+	public boolean markSupported() { return false; }
+	@Override
+	public synchronized void mark(int readlimit) { }
+	@Override
+	public synchronized void reset() throws IOException { throw new IOException("mark/reset not supported"); }
+	/**
+	 * Decodes the next block or buffer of data.
+	 * @return (boolean) false at the end of the stream
+	 */
+	private boolean fill() throws IOException {
+		if (eof) return false;
+		pos = limit = 0;
+		if (format == HuffmanCodec.FORMAT_BLOCK || format == HuffmanCodec.FORMAT_INDEXED) {
+			int rawLen = reader.readBits(32);
+			if (rawLen < 0 || rawLen > blockSize) throw new IOException("Decompression failed: File corrupted.");
+			if (rawLen == 0) {
+				eof = true;
+				return false;
+			}
+			int payloadLen = reader.readBits(32);
+			if (!BlockCodec.validPayload(payloadLen, rawLen)) throw new IOException("Decompression failed: File corrupted.");
+			byte[] payload = new byte[payloadLen];
+			reader.readFully(payload, 0, payloadLen);
+			buffer = BlockCodec.decodeBlock(payload, rawLen);
+			limit = rawLen;
+			return true;
+		}
+		while (limit < buffer.length) {
+			int symbol = adaptive != null ? adaptive.decode(reader) : table.decode(reader);
+			if (symbol == HuffmanCodec.PSEUDO_EOF) {
+				eof = true;
+				break;
+			}
+			buffer[limit++] = (byte) symbol;
+		}
+		return limit > 0;
+	}
+	/**
+	 * Returns the extension stored in the header, including the leading dot.
+	 * @return (String)
+	 */
+	public String getExtension() { return extension; }
+	public int getFormat() { return format; }
+}
@@ -0,0 +1,117 @@
+package com.vapula87.huffman.compressor;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import com.vapula87.huffman.utilities.BitWriter;
+/**
+ * Output stream filter that compresses into the .huff block format.<br><br>
+ *
+ * Written bytes are collected into a block; each full block is coded on its own by
+ * {@link BlockCodec#encodeBlock} and framed, so data can be compressed on the fly with memory
+ * bounded by the block size and no temporary file or counting pass.<br>
+ * {@link #flush()} codes whatever is buffered as a short block before flushing the underlying stream,
+ * so a reader can decode everything written so far. {@link #close()} writes the end marker.
+ *
+ * @author Michael Hackett
+ */
+public class HuffmanOutputStream extends FilterOutputStream {
+	private final BitWriter 	writer;
+	private final byte[] 		block;
+	private int 				used = 0, maxLength = 0, models = 0, transforms = 0;
+	private boolean 			finished = false;
+	/**
+	 * Creates a compressing stream with the default block size and no stored extension.
+	 * @param out (OutputStream)
+	 * @throws IOException
+	 */
+	public HuffmanOutputStream(OutputStream out) throws IOException { this(out, "", BlockCodec.DEFAULT_BLOCK_SIZE); }
+	/**
+	 * Creates a compressing stream and writes the .huff header.
+	 *
+	 * @param out (OutputStream)
+	 * @param extension (String) extension to restore on decompression, including the leading dot
+	 * @param blockSize (int) uncompressed bytes per block, at most BlockCodec.MAX_BLOCK_SIZE
+	 * @throws IOException
+	 */
+	public HuffmanOutputStream(OutputStream out, String extension, int blockSize) throws IOException {
+		super(out);
+		if (!BlockCodec.validBlockSize(blockSize)) throw new IllegalArgumentException("Block size must be between 1 and " + BlockCodec.MAX_BLOCK_SIZE + ".");
+		block = new byte[blockSize];
+		writer = new BitWriter(out, 1 << 16);
+		HuffmanCodec.writeHeader(writer, HuffmanCodec.FORMAT_BLOCK, extension);
+		writer.write(blockSize, 32);
+	}
+	@Override
+	public void write(int b) throws IOException {
+		ensureOpen();
+		block[used++] = (byte) b;
+		if (used == block.length) writeBlock();
+	}
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		ensureOpen();
+		if (off < 0 || len < 0 || off + len > b.length) throw new IndexOutOfBoundsException();
+		while (len > 0) {
+			int n = Math.min(len, block.length - used);
+			System.arraycopy(b, off, block, used, n);
+			used += n;
+			off += n;
+			len -= n;
+			if (used == block.length) writeBlock();
+		}
+	}
+	/**
+	 * Codes the buffered bytes as a block and flushes the underlying stream.
+	 * @throws IOException
+	 */
+	@Override
+	public void flush() throws IOException {
+		ensureOpen();
+		writeBlock();
+		writer.flush();
+	}
+	/**
+	 * Writes the remaining data and the end marker without closing the underlying stream.
+	 * @throws IOException
+	 */
+	public void finish() throws IOException {
+		if (finished) return;
+		writeBlock();
+		writer.write(0, 32);
+		writer.flush();
+		finished = true;
+	}
+	@Override
+	public void close() throws IOException {
+		try { finish(); }
+		finally { out.close(); }
+	}
+	private void writeBlock() throws IOException {
+		if (used == 0) return;
+		byte[] payload = BlockCodec.encodeBlock(block, 0, used, maxLength, models, transforms, null);
+		writer.write(used, 32);
+		writer.write(payload.length, 32);
+		writer.writeBytes(payload, 0, payload.length);
+		used = 0;
+	}
+	private void ensureOpen() throws IOException {
+		if (finished) throw new IOException("Stream finished.");
+	}
+	/**
+	 * Limits every block's codes to the given length.
+	 * @param maxLength (int) longest code allowed, or 0 for no limit
+	 */
+	public void setMaxLength(int maxLength) { this.maxLength = maxLength; }
+	/**
+	 * Selects the extra models tried on every block.
+	 * @param models (int) any of BlockCodec.TRY_ORDER1, BlockCodec.TRY_WIDE and BlockCodec.lz77(), or 0
+	 */
+	public void setModels(int models) { this.models = models; }
+	/**
+	 * Selects the transform stages tried on every block.
+	 * @param transforms (int) TransformPipeline stage flags, or 0
+	 */
+	public void setTransforms(int transforms) { this.transforms = transforms; }
+}
@@ -0,0 +1,234 @@
+package com.vapula87.huffman.compressor;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import com.vapula87.huffman.interfaces.IBlockModel;
+import com.vapula87.huffman.structures.CodeLengthBuilder;
+import com.vapula87.huffman.structures.CodeLengths;
+import com.vapula87.huffman.structures.CodeTable;
+import com.vapula87.huffman.structures.DecodeTable;
+import com.vapula87.huffman.structures.PackageMerge;
+import com.vapula87.huffman.utilities.BitReader;
+import com.vapula87.huffman.utilities.BitWriter;
+/**
+ * LZ77 model for a block: repeated substrings are replaced by (length, distance) references to
+ * earlier data in the same block, and the tokens are Huffman coded.<br><br>
+ *
+ * Matches are found with hash chains over 3-byte prefixes. The level sets how many chain entries
+ * are compared and how long a match must be to stop early, and from level 4 on a match is deferred
+ * by one byte if the next position starts a longer one (lazy matching). The window limits how far
+ * back a match may reach.<br>
+ * Literals and match lengths share one alphabet and distances use a second one. Lengths and distances
+ * are coded as a bucket symbol plus extra bits: values below 4 are their own buckets, and above that
+ * each power of two is split into two buckets.<br><br>
+ *
+ * Layout: literal/length code lengths, distance code lengths, then the tokens until the block is full.
+ *
+ * @author Michael Hackett
+ */
+public class Lz77Model implements IBlockModel {
+	public static final int 	MIN_MATCH = 3, MAX_MATCH = MIN_MATCH + (1 << 16) - 1;
+	public static final int 	DEFAULT_LEVEL = 6, MAX_LEVEL = 9, DEFAULT_WINDOW_BITS = 16, MIN_WINDOW_BITS = 10, MAX_WINDOW_BITS = 24;
+	public static final int 	LENGTH_SYMBOLS = 32, DISTANCE_SYMBOLS = 2 * MAX_WINDOW_BITS;
+	public static final int 	LITLEN_SYMBOLS = HuffmanCodec.MAX_COUNT + LENGTH_SYMBOLS;
+	private static final int[] 	CHAIN = { 4, 8, 16, 32, 64, 128, 256, 1024, 4096 };
+	private static final int[] 	NICE = { 8, 16, 32, 64, 128, 258, 258, 1024, MAX_MATCH };
+	private static final int 	HASH_BITS = 16, LAZY_LEVEL = 4;
+	private static final ThreadLocal<CodeLengthBuilder> BUILDER = ThreadLocal.withInitial(() -> new CodeLengthBuilder(LITLEN_SYMBOLS));
+	private final long[] 		tokens;
+	private final int 			count;
+	private final int[] 		litLengths, distLengths;
+	private final long 			bits;
+	private Lz77Model(long[] tokens, int count, int[] litLengths, int[] distLengths, long bits) {
+		this.tokens = tokens;
+		this.count = count;
+		this.litLengths = litLengths;
+		this.distLengths = distLengths;
+		this.bits = bits;
+	}
+	/**
+	 * Parses the block into tokens and builds both code tables.
+	 *
+	 * @param src (byte[])
+	 * @param off (int)
+	 * @param len (int)
+	 * @param level (int) 1 (fastest) to MAX_LEVEL (smallest)
+	 * @param windowBits (int) log2 of the window, MIN_WINDOW_BITS to MAX_WINDOW_BITS
+	 * @param maxLength (int) longest code allowed, or 0 for no limit
+	 * @return (Lz77Model)
+	 */
+	public static Lz77Model build(byte[] src, int off, int len, int level, int windowBits, int maxLength) {
+		level = Math.max(1, Math.min(MAX_LEVEL, level));
+		windowBits = Math.max(MIN_WINDOW_BITS, Math.min(MAX_WINDOW_BITS, windowBits));
+		long[] tokens = new long[len];
+		int count = new Parser(src, off, len, level, windowBits).parse(tokens);
+		int[] litCounts = new int[LITLEN_SYMBOLS], distCounts = new int[DISTANCE_SYMBOLS];
+		long extra = 0;
+		for (int t = 0; t < count; t++) {
+			int length = (int) (tokens[t] >>> 32), value = (int) tokens[t];
+			if (length == 0) litCounts[value]++;
+			else {
+				int lengthCode = bucket(length - MIN_MATCH), distCode = bucket(value - 1);
+				litCounts[HuffmanCodec.MAX_COUNT + lengthCode]++;
+				distCounts[distCode]++;
+				extra += extraBits(lengthCode) + extraBits(distCode);
+			}
+		}
+		int[] litLengths = lengths(litCounts, maxLength), distLengths = lengths(distCounts, maxLength);
+		long bits = CodeLengths.size(litLengths) + CodeLengths.size(distLengths) + extra;
+		for (int s = 0; s < LITLEN_SYMBOLS; s++) bits += (long) litCounts[s] * litLengths[s];
+		for (int s = 0; s < DISTANCE_SYMBOLS; s++) bits += (long) distCounts[s] * distLengths[s];
+		return new Lz77Model(tokens, count, litLengths, distLengths, bits);
+	}
+	private static int[] lengths(int[] counts, int maxLength) {
+		int[] lengths = BUILDER.get().build(counts, new int[counts.length]);
+		if (maxLength > 0 && PackageMerge.maxLength(lengths) > maxLength) lengths = PackageMerge.lengths(counts, maxLength);
+		return lengths;
+	}
+	@Override
+	public int getModel() { return BlockCodec.MODEL_LZ77; }
+	@Override
+	public long getBits() { return bits; }
+	@Override
+	public void write(BitWriter writer, byte[] src, int off, int len) throws IOException {
+		CodeLengths.write(writer, litLengths);
+		CodeLengths.write(writer, distLengths);
+		long[] litCodes = CodeTable.canonical(litLengths).getCodes(), distCodes = CodeTable.canonical(distLengths).getCodes();
+		for (int t = 0; t < count; t++) {
+			int length = (int) (tokens[t] >>> 32), value = (int) tokens[t];
+			if (length == 0) {
+				writer.write(litCodes[value], litLengths[value]);
+				continue;
+			}
+			int lengthCode = bucket(length - MIN_MATCH), distCode = bucket(value - 1);
+			int symbol = HuffmanCodec.MAX_COUNT + lengthCode;
+			writer.write(litCodes[symbol], litLengths[symbol]);
+			if (extraBits(lengthCode) > 0) writer.write(length - MIN_MATCH - base(lengthCode), extraBits(lengthCode));
+			writer.write(distCodes[distCode], distLengths[distCode]);
+			if (extraBits(distCode) > 0) writer.write(value - 1 - base(distCode), extraBits(distCode));
+		}
+	}
+	/**
+	 * Reads a model written by {@link #write} and decodes the block.
+	 *
+	 * @param reader (BitReader)
+	 * @param block (byte[]) receives rawLen bytes
+	 * @param rawLen (int)
+	 * @throws IOException if the header, codes or references are malformed
+	 */
+	public static void read(BitReader reader, byte[] block, int rawLen) throws IOException {
+		DecodeTable literals = table(CodeLengths.read(reader, LITLEN_SYMBOLS));
+		DecodeTable distances = table(CodeLengths.read(reader, DISTANCE_SYMBOLS));
+		if (literals == null && rawLen > 0) throw new IOException("Decompression failed: File corrupted.");
+		for (int w = 0; w < rawLen; ) {
+			int symbol = literals.decode(reader);
+			if (symbol < HuffmanCodec.MAX_COUNT) {
+				block[w++] = (byte) symbol;
+				continue;
+			}
+			int lengthCode = symbol - HuffmanCodec.MAX_COUNT;
+			int length = MIN_MATCH + base(lengthCode) + (extraBits(lengthCode) > 0 ? reader.readBits(extraBits(lengthCode)) : 0);
+			if (distances == null) throw new IOException("Decompression failed: File corrupted.");
+			int distCode = distances.decode(reader);
+			int distance = 1 + base(distCode) + (extraBits(distCode) > 0 ? reader.readBits(extraBits(distCode)) : 0);
+			if (distance > w || length > rawLen - w) throw new IOException("Decompression failed: File corrupted.");
+			for (int end = w + length; w < end; w++) block[w] = block[w - distance];
+		}
+	}
+	private static DecodeTable table(int[] lengths) {
+		for (int len : lengths) if (len > 0) return new DecodeTable(CodeTable.canonical(lengths));
+		return null;
+	}
+	/**
+	 * Returns the bucket symbol of a length or distance offset.
+	 */
+	static int bucket(int value) {
+		if (value < 4) return value;
+		int top = 31 - Integer.numberOfLeadingZeros(value);
+		return 2 * top + ((value >>> (top - 1)) & 1);
+	}
+	static int extraBits(int bucket) { return bucket < 4 ? 0 : (bucket >>> 1) - 1; }
+	static int base(int bucket) { return bucket < 4 ? bucket : (2 | (bucket & 1)) << ((bucket >>> 1) - 1); }
+	/**
+	 * Hash-chain match finder over one block.<br>
+	 * head holds the latest position of each 3-byte hash and prev links every position to the previous
+	 * one with the same hash, both relative to the block start; prev is a ring the size of the window.
+	 */
+	private static class Parser {
+		private final byte[] 	src;
+		private final int 		off, end, window, maxChain, nice;
+		private final boolean 	lazy;
+		private final int[] 	head = new int[1 << HASH_BITS], prev;
+		private int 			matchLength, matchDistance;
+		private Parser(byte[] src, int off, int len, int level, int windowBits) {
+			this.src = src;
+			this.off = off;
+			this.end = off + len;
+			this.window = 1 << Math.min(windowBits, CodeLengths.bitsFor(Math.max(2, len)));
+			this.maxChain = CHAIN[level - 1];
+			this.nice = NICE[level - 1];
+			this.lazy = level >= LAZY_LEVEL;
+			this.prev = new int[window];
+			Arrays.fill(head, -1);
+		}
+		private int parse(long[] tokens) {
+			int count = 0;
+			boolean carried = false;
+			for (int i = off; i < end; ) {
+				if (!carried) longest(i);
+				carried = false;
+				if (matchLength < MIN_MATCH) {
+					tokens[count++] = src[i] & 0xFF;
+					insert(i++);
+					continue;
+				}
+				int length = matchLength, distance = matchDistance;
+				insert(i);
+				if (lazy && length < nice) {
+					longest(i + 1);
+					if (matchLength > length) {
+						tokens[count++] = src[i++] & 0xFF;
+						carried = true;
+						continue;
+					}
+				}
+				tokens[count++] = (long) length << 32 | distance;
+				for (int k = i + 1; k < i + length; k++) insert(k);
+				i += length;
+			}
+			return count;
+		}
+		private int hash(int pos) {
+			int key = (src[pos] & 0xFF) << 16 | (src[pos + 1] & 0xFF) << 8 | (src[pos + 2] & 0xFF);
+			return (key * 0x9E3779B1) >>> (32 - HASH_BITS);
+		}
+		private void insert(int pos) {
+			if (pos + MIN_MATCH > end) return;
+			int h = hash(pos), rel = pos - off;
+			prev[rel & (window - 1)] = head[h];
+			head[h] = rel;
+		}
+		/**
+		 * Finds the longest match for the bytes at pos among earlier positions in the window.
+		 */
+		private void longest(int pos) {
+			matchLength = 0;
+			if (pos + MIN_MATCH > end) return;
+			int rel = pos - off, max = Math.min(MAX_MATCH, end - pos), candidate = head[hash(pos)];
+			for (int chain = maxChain; candidate >= 0 && rel - candidate < window && chain > 0; chain--) {
+				int from = off + candidate;
+				if (src[from + matchLength] == src[pos + matchLength]) {
+					int length = 0;
+					while (length < max && src[from + length] == src[pos + length]) length++;
+					if (length > matchLength) {
+						matchLength = length;
+						matchDistance = pos - from;
+						if (length >= nice || length == max) break;
+					}
+				}
+				candidate = prev[candidate & (window - 1)];
+			}
+		}
+	}
+}
@@ -0,0 +1,45 @@
+package com.vapula87.huffman.compressor;
+
+import com.vapula87.huffman.interfaces.IBlockTransform;
+/**
+ * Move-to-front coding.<br><br>
+ *
+ * Each byte is replaced by its position in a list of recently used bytes and then moved to the
+ * front, which turns the clustered output of the BWT into mostly small numbers and zeros.
+ *
+ * @author Michael Hackett
+ */
+public class MoveToFront implements IBlockTransform {
+	@Override
+	public int getFlag() { return TransformPipeline.MTF; }
+	@Override
+	public byte[] forward(byte[] src, int len, int[] parameter) {
+		byte[] list = identity(), out = new byte[len];
+		for (int i = 0; i < len; i++) {
+			byte b = src[i];
+			int pos = 0;
+			while (list[pos] != b) pos++;
+			System.arraycopy(list, 0, list, 1, pos);
+			list[0] = b;
+			out[i] = (byte) pos;
+		}
+		return out;
+	}
+	@Override
+	public byte[] inverse(byte[] src, int len, int parameter) {
+		byte[] list = identity(), out = new byte[len];
+		for (int i = 0; i < len; i++) {
+			int pos = src[i] & 0xFF;
+			byte b = list[pos];
+			System.arraycopy(list, 0, list, 1, pos);
+			list[0] = b;
+			out[i] = b;
+		}
+		return out;
+	}
+	private static byte[] identity() {
+		byte[] list = new byte[HuffmanCodec.MAX_COUNT];
+		for (int i = 0; i < list.length; i++) list[i] = (byte) i;
+		return list;
+	}
+}
@@ -0,0 +1,141 @@
+package com.vapula87.huffman.compressor;
+
+import java.io.IOException;
+
+import com.vapula87.huffman.interfaces.IBlockModel;
+import com.vapula87.huffman.structures.CodeLengthBuilder;
+import com.vapula87.huffman.structures.CodeLengths;
+import com.vapula87.huffman.structures.CodeTable;
+import com.vapula87.huffman.structures.DecodeTable;
+import com.vapula87.huffman.structures.PackageMerge;
+import com.vapula87.huffman.utilities.BitReader;
+import com.vapula87.huffman.utilities.BitWriter;
+/**
+ * Order-1 context model for a block: each byte is coded with a table chosen by the byte before it.<br><br>
+ *
+ * Bytes are counted in a 256 x 256 matrix indexed by (previous byte, byte); the first byte of a block
+ * uses context 0. Every context that occurs either gets its own table or is clustered onto the
+ * block's shared order-0 table, whichever costs fewer bits including the table itself, so rare
+ * contexts do not pay for a header of their own.<br>
+ * Codes are limited to MAX_LENGTH bits so each context decodes through a small single-level
+ * {@link DecodeTable}.<br><br>
+ *
+ * Layout: 2 bits per context (unused, own table, shared table), the shared code lengths if any
+ * context uses them, the code lengths of each context with its own table, then the codes.
+ *
+ * @author Michael Hackett
+ */
+public class Order1Model implements IBlockModel {
+	public static final int 	CONTEXTS = HuffmanCodec.MAX_COUNT, MAX_LENGTH = 12;
+	private static final int 	UNUSED = 0, OWN = 1, SHARED = 2, KIND_BITS = 2;
+	private final int[] 		kinds = new int[CONTEXTS];
+	private final int[][] 		lengths = new int[CONTEXTS][];
+	private int[] 				shared;
+	private long 				bits;
+	private Order1Model() { }
+	/**
+	 * Counts the block by context and chooses a table for every context.
+	 *
+	 * @param src (byte[])
+	 * @param off (int)
+	 * @param len (int)
+	 * @param builder (CodeLengthBuilder) for 256 symbols
+	 * @return (Order1Model)
+	 */
+	public static Order1Model build(byte[] src, int off, int len, CodeLengthBuilder builder) {
+		Order1Model model = new Order1Model();
+		int[][] counts = new int[CONTEXTS][CONTEXTS];
+		int[] order0 = new int[CONTEXTS];
+		for (int w = off, prev = 0; w < off + len; w++) {
+			int symbol = src[w] & 0xFF;
+			counts[prev][symbol]++;
+			order0[symbol]++;
+			prev = symbol;
+		}
+		int[] shared = limit(order0, builder.build(order0, new int[CONTEXTS]));
+		boolean sharedUsed = false;
+		model.bits = KIND_BITS * CONTEXTS;
+		for (int c = 0; c < CONTEXTS; c++) {
+			int[] row = counts[c];
+			long total = 0, sharedBits = 0;
+			for (int s = 0; s < CONTEXTS; s++) {
+				total += row[s];
+				sharedBits += (long) row[s] * shared[s];
+			}
+			if (total == 0) continue;
+			int[] own = limit(row, builder.build(row, new int[CONTEXTS]));
+			long ownBits = CodeLengths.size(own);
+			for (int s = 0; s < CONTEXTS; s++) ownBits += (long) row[s] * own[s];
+			if (ownBits < sharedBits) {
+				model.kinds[c] = OWN;
+				model.lengths[c] = own;
+				model.bits += ownBits;
+			}
+			else {
+				model.kinds[c] = SHARED;
+				model.lengths[c] = shared;
+				model.bits += sharedBits;
+				sharedUsed = true;
+			}
+		}
+		if (sharedUsed) {
+			model.shared = shared;
+			model.bits += CodeLengths.size(shared);
+		}
+		return model;
+	}
+	private static int[] limit(int[] weights, int[] lengths) {
+		if (PackageMerge.maxLength(lengths) <= MAX_LENGTH) return lengths;
+		return PackageMerge.lengths(weights, MAX_LENGTH);
+	}
+	@Override
+	public int getModel() { return BlockCodec.MODEL_ORDER1; }
+	@Override
+	public void write(BitWriter writer, byte[] src, int off, int len) throws IOException {
+		for (int kind : kinds) writer.write(kind, KIND_BITS);
+		if (shared != null) CodeLengths.write(writer, shared);
+		for (int c = 0; c < CONTEXTS; c++) if (kinds[c] == OWN) CodeLengths.write(writer, lengths[c]);
+		long[][] codes = new long[CONTEXTS][];
+		long[] sharedCodes = shared == null ? null : CodeTable.canonical(shared).getCodes();
+		for (int c = 0; c < CONTEXTS; c++) {
+			if (kinds[c] == OWN) codes[c] = CodeTable.canonical(lengths[c]).getCodes();
+			else if (kinds[c] == SHARED) codes[c] = sharedCodes;
+		}
+		for (int w = off, prev = 0; w < off + len; w++) {
+			int symbol = src[w] & 0xFF;
+			writer.write(codes[prev][symbol], lengths[prev][symbol]);
+			prev = symbol;
+		}
+	}
+	/**
+	 * Reads a model written by {@link #write} and decodes the block.
+	 *
+	 * @param reader (BitReader)
+	 * @param block (byte[]) receives rawLen bytes
+	 * @param rawLen (int)
+	 * @throws IOException if the header is malformed or a byte's context has no table
+	 */
+	public static void read(BitReader reader, byte[] block, int rawLen) throws IOException {
+		int[] kinds = new int[CONTEXTS];
+		boolean sharedUsed = false;
+		for (int c = 0; c < CONTEXTS; c++) {
+			kinds[c] = reader.readBits(KIND_BITS);
+			if (kinds[c] > SHARED) throw new IOException("Decompression failed: File corrupted.");
+			sharedUsed |= kinds[c] == SHARED;
+		}
+		DecodeTable shared = sharedUsed ? new DecodeTable(CodeTable.canonical(CodeLengths.read(reader, CONTEXTS))) : null;
+		DecodeTable[] tables = new DecodeTable[CONTEXTS];
+		for (int c = 0; c < CONTEXTS; c++) {
+			if (kinds[c] == OWN) tables[c] = new DecodeTable(CodeTable.canonical(CodeLengths.read(reader, CONTEXTS)));
+			else if (kinds[c] == SHARED) tables[c] = shared;
+		}
+		for (int w = 0, prev = 0; w < rawLen; w++) {
+			DecodeTable table = tables[prev];
+			if (table == null) throw new IOException("Decompression failed: File corrupted.");
+			prev = table.decode(reader);
+			block[w] = (byte) prev;
+		}
+	}
+	@Override
+	public long getBits() { return bits; }
+}
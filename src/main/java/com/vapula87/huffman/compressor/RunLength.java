@@ -0,0 +1,62 @@
+package com.vapula87.huffman.compressor;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import com.vapula87.huffman.interfaces.IBlockTransform;
+/**
+ * Run-length encoding of long byte runs.<br><br>
+ *
+ * A run of 4 to 259 equal bytes is written as 4 copies followed by a count of the remaining copies,
+ * so short runs cost nothing and long runs shrink to 5 bytes. Running it before the BWT also keeps
+ * highly repetitive blocks from slowing down suffix sorting.
+ *
+ * @author Michael Hackett
+ */
+public class RunLength implements IBlockTransform {
+	private static final int 	MIN_RUN = 4, MAX_RUN = MIN_RUN + 255;
+	@Override
+	public int getFlag() { return TransformPipeline.RLE; }
+	@Override
+	public byte[] forward(byte[] src, int len, int[] parameter) {
+		byte[] out = new byte[len + len / MIN_RUN + 1];
+		int o = 0;
+		for (int i = 0; i < len; ) {
+			byte b = src[i];
+			int run = 1;
+			while (i + run < len && src[i + run] == b && run < MAX_RUN) run++;
+			for (int r = 0; r < Math.min(run, MIN_RUN); r++) out[o++] = b;
+			if (run >= MIN_RUN) out[o++] = (byte) (run - MIN_RUN);
+			i += run;
+		}
+		return Arrays.copyOf(out, o);
+	}
+	@Override
+	public byte[] inverse(byte[] src, int len, int parameter) throws IOException {
+		long size = 0;
+		for (int i = 0, run = 0, prev = -1; i < len; i++) {
+			size++;
+			run = src[i] == prev ? run + 1 : 1;
+			prev = src[i];
+			if (run == MIN_RUN) {
+				if (++i == len) throw new IOException("Decompression failed: File corrupted.");
+				size += src[i] & 0xFF;
+				run = 0;
+				prev = -1;
+			}
+		}
+		if (size > Integer.MAX_VALUE - 8) throw new IOException("Decompression failed: File corrupted.");
+		byte[] out = new byte[(int) size];
+		for (int i = 0, o = 0, run = 0, prev = -1; i < len; i++) {
+			out[o++] = src[i];
+			run = src[i] == prev ? run + 1 : 1;
+			prev = src[i];
+			if (run == MIN_RUN) {
+				for (int r = src[++i] & 0xFF; r > 0; r--) out[o++] = (byte) prev;
+				run = 0;
+				prev = -1;
+			}
+		}
+		return out;
+	}
+}
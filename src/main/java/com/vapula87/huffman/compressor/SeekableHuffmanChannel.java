@@ -0,0 +1,184 @@
+package com.vapula87.huffman.compressor;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import com.vapula87.huffman.utilities.BitReader;
+/**
+ * Random-access, read-only view of the uncompressed contents of an indexed .huff file.<br><br>
+ *
+ * The block index is loaded from the footer when the channel is opened. A read looks the position
+ * up in the index, reads and decodes only the blocks it covers, and keeps decoded blocks in a small
+ * direct-mapped cache, so a range read costs O(block) instead of O(file).<br>
+ * {@link #readAt} does not move the channel position and may be called from several threads. Each
+ * cache slot has its own lock, so reads of blocks in different slots decode in parallel.
+ *
+ * @author Michael Hackett
+ */
+public class SeekableHuffmanChannel implements SeekableByteChannel {
+	public static final int 	CACHE_SLOTS = 16;
+	private final FileChannel 	channel;
+	private final long[] 		frameOffsets, rawOffsets;
+	private final long 			size;
+	private final int 			blockSize;
+	private final Slot[] 		slots = new Slot[CACHE_SLOTS];
+	private long 				position = 0;
+	/**
+	 * One cache entry: a decoded block and its number, guarded by the slot's own lock.
+	 */
+	private static class Slot {
+		private int 	block = -1;
+		private byte[] 	data;
+	}
+	/**
+	 * Opens an indexed .huff file.
+	 *
+	 * @param file (Path)
+	 * @return (SeekableHuffmanChannel)
+	 * @throws IOException if the file is not in the indexed format
+	 */
+	public static SeekableHuffmanChannel open(Path file) throws IOException {
+		FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+		try { return new SeekableHuffmanChannel(channel); }
+		catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+	/**
+	 * Reads the header and the block index of an indexed .huff file.
+	 *
+	 * @param channel (FileChannel) closed with this channel
+	 * @throws IOException if the file is not in the indexed format
+	 */
+	public SeekableHuffmanChannel(FileChannel channel) throws IOException {
+		this.channel = channel;
+		HuffmanCodec codec = new HuffmanCodec();
+		BitReader reader = new BitReader(Channels.newInputStream(channel.position(0)), 1 << 10);
+		codec.readHeader(reader);
+		if (codec.getReadFormat() != HuffmanCodec.FORMAT_INDEXED) throw new IOException("Decompression failed: Not an indexed .huff file.");
+		blockSize = reader.readBits(32);
+		long length = channel.size();
+		if (!BlockCodec.validBlockSize(blockSize) || length < BlockCodec.TRAILER_BYTES) throw new IOException("Decompression failed: File corrupted.");
+		ByteBuffer trailer = readFully(length - BlockCodec.TRAILER_BYTES, BlockCodec.TRAILER_BYTES);
+		long indexOffset = trailer.getLong();
+		if (trailer.getInt() != BlockCodec.INDEX_MAGIC || indexOffset < 0 || length - BlockCodec.TRAILER_BYTES - indexOffset < 12)
+			throw new IOException("Decompression failed: File corrupted.");
+		ByteBuffer index = readFully(indexOffset, (int) (length - BlockCodec.TRAILER_BYTES - indexOffset));
+		int blocks = index.getInt();
+		if (blocks < 0 || index.remaining() != blocks * 16L + 8) throw new IOException("Decompression failed: File corrupted.");
+		frameOffsets = new long[blocks];
+		rawOffsets = new long[blocks];
+		for (int b = 0; b < blocks; b++) {
+			frameOffsets[b] = index.getLong();
+			rawOffsets[b] = index.getLong();
+		}
+		size = index.getLong();
+		for (int x = 0; x < slots.length; x++) slots[x] = new Slot();
+	}
+	/**
+	 * Reads uncompressed bytes starting at pos into the whole array, or up to the end of the data.
+	 *
+	 * @param pos (long) uncompressed offset
+	 * @param dst (byte[])
+	 * @return (int) bytes read, or -1 if pos is at or past the end
+	 * @throws IOException
+	 */
+	public int readAt(long pos, byte[] dst) throws IOException { return readAt(pos, dst, 0, dst.length); }
+	/**
+	 * Reads uncompressed bytes starting at pos, or up to the end of the data.
+	 *
+	 * @param pos (long) uncompressed offset
+	 * @param dst (byte[])
+	 * @param off (int)
+	 * @param len (int)
+	 * @return (int) bytes read, or -1 if pos is at or past the end
+	 * @throws IOException
+	 */
+	public int readAt(long pos, byte[] dst, int off, int len) throws IOException {
+		if (!channel.isOpen()) throw new ClosedChannelException();
+		if (pos < 0 || off < 0 || len < 0 || off + len > dst.length) throw new IndexOutOfBoundsException();
+		if (pos >= size) return -1;
+		int read = 0;
+		while (read < len && pos < size) {
+			int b = Arrays.binarySearch(rawOffsets, pos);
+			if (b < 0) b = -b - 2;
+			byte[] block = load(b);
+			int within = (int) (pos - rawOffsets[b]), n = Math.min(len - read, block.length - within);
+			System.arraycopy(block, within, dst, off + read, n);
+			read += n;
+			pos += n;
+		}
+		return read;
+	}
+	/**
+	 * Returns the decoded block, reading it from the file unless its cache slot holds it.<br>
+	 * Only the block's slot is locked. A slot's array is replaced, never changed, so the returned block
+	 * stays valid after the lock is released.
+	 */
+	private byte[] load(int b) throws IOException {
+		Slot slot = slots[b % CACHE_SLOTS];
+		synchronized (slot) {
+			if (slot.block == b) return slot.data;
+			ByteBuffer frame = readFully(frameOffsets[b], 8);
+			int rawLen = frame.getInt(), payloadLen = frame.getInt();
+			long expected = (b + 1 < rawOffsets.length ? rawOffsets[b + 1] : size) - rawOffsets[b];
+			if (rawLen != expected || rawLen > blockSize || !BlockCodec.validPayload(payloadLen, rawLen)) throw new IOException("Decompression failed: File corrupted.");
+			slot.data = BlockCodec.decodeBlock(readFully(frameOffsets[b] + 8, payloadLen).array(), rawLen);
+			slot.block = b;
+			return slot.data;
+		}
+	}
+	private ByteBuffer readFully(long pos, int len) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(len);
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, pos + buffer.position()) < 0) throw new IOException("Decompression failed: File corrupted.");
+		}
+		return buffer.flip();
+	}
+	@Override
+	public int read(ByteBuffer dst) throws IOException {
+		byte[] bytes = new byte[Math.min(dst.remaining(), blockSize)];
+		int n = readAt(position, bytes, 0, bytes.length);
+		if (n > 0) {
+			dst.put(bytes, 0, n);
+			position += n;
+		}
+		return n;
+	}
+	@Override
+	public int write(ByteBuffer src) { throw new NonWritableChannelException(); }
+	@Override
+	public long position() { return position; }
+	@Override
+	public SeekableByteChannel position(long newPosition) {
+		if (newPosition < 0) throw new IllegalArgumentException("Negative position.");
+		position = newPosition;
+		return this;
+	}
+	/**
+	 * Returns the uncompressed size.
+	 * @return (long)
+	 */
+	@Override
+	public long size() { return size; }
+	@Override
+	public SeekableByteChannel truncate(long size) { throw new NonWritableChannelException(); }
+	@Override
+	public boolean isOpen() { return channel.isOpen(); }
+	@Override
+	public void close() throws IOException { channel.close(); }
+	/**
+	 * Returns the number of blocks in the index.
+	 * @return (int)
+	 */
+	public int getBlockCount() { return frameOffsets.length; }
+}
@@ -0,0 +1,204 @@
+package com.vapula87.huffman.compressor;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+import com.vapula87.huffman.structures.CodeLengthBuilder;
+import com.vapula87.huffman.structures.CodeLengths;
+import com.vapula87.huffman.structures.CodeTable;
+import com.vapula87.huffman.structures.DecodeTable;
+import com.vapula87.huffman.structures.PackageMerge;
+import com.vapula87.huffman.utilities.BitReader;
+import com.vapula87.huffman.utilities.BitWriter;
+/**
+ * Directory of trained code tables shared between many small files.<br><br>
+ *
+ * A table is trained on the byte counts of a sample corpus, with every byte value and PSEUDO_EOF
+ * given a weight of at least 1 so any file can be coded with it, and is stored as
+ * <code>&lt;id&gt;.hufftable</code>: TABLE_MAGIC (32 bits), then the {@link CodeLengths}.<br>
+ * The ID is the CRC-32 of the code lengths, so training the same table twice, or on another
+ * machine, gives the same ID. Files in the shared format carry only that ID.<br>
+ * Loaded tables and their ready-built encode and decode tables are cached by ID; they are
+ * read-only once built, so the caches are shared by all threads.
+ *
+ * @author Michael Hackett
+ */
+public class TableRegistry {
+	public static final String 		TABLE_EXTENSION = ".hufftable";
+	public static final int 		TABLE_MAGIC = 0x48544231, MAX_LENGTH = 20;
+	private static TableRegistry 	defaultRegistry;
+	private final Path 				dir;
+	private final ConcurrentHashMap<Integer, CodeTable> 	codes = new ConcurrentHashMap<>();
+	private final ConcurrentHashMap<Integer, DecodeTable> 	decoders = new ConcurrentHashMap<>();
+	/**
+	 * Opens the registry in the given directory. It is created when the first table is registered.
+	 * @param dir (Path)
+	 */
+	public TableRegistry(Path dir) { this.dir = dir; }
+	/**
+	 * Returns the registry in the directory named by the huffman.tables system property,
+	 * or ~/.huffman/tables.
+	 * @return (TableRegistry)
+	 */
+	public static synchronized TableRegistry getDefault() {
+		if (defaultRegistry == null) {
+			String dir = System.getProperty("huffman.tables");
+			defaultRegistry = new TableRegistry(dir != null ? Path.of(dir) : Path.of(System.getProperty("user.home"), ".huffman", "tables"));
+		}
+		return defaultRegistry;
+	}
+	/**
+	 * Counts every file under the corpus and registers a table trained on the totals.
+	 *
+	 * @param corpus (Path) a file or a directory
+	 * @return (int) the table ID
+	 * @throws IOException
+	 */
+	public int train(Path corpus) throws IOException {
+		long[] totals = new long[HuffmanCodec.MAX_COUNT];
+		byte[] chunk = new byte[1 << 16];
+		try (Stream<Path> walk = Files.walk(corpus)) {
+			Iterator<Path> it = walk.filter(Files::isRegularFile).iterator();
+			while (it.hasNext()) {
+				try (InputStream in = Files.newInputStream(it.next())) {
+					for (int n; (n = in.read(chunk)) != -1; ) for (int w = 0; w < n; w++) totals[chunk[w] & 0xFF]++;
+				}
+			}
+		}
+		return register(lengths(totals));
+	}
+	/**
+	 * Builds code lengths for the totals in which every byte value and PSEUDO_EOF has a code.
+	 *
+	 * @param totals (long[]) byte counts
+	 * @return (int[]) lengths over PSEUDO_EOF + 1 symbols, none longer than MAX_LENGTH
+	 */
+	public static int[] lengths(long[] totals) {
+		int[] weights = new int[HuffmanCodec.PSEUDO_EOF + 1];
+		int[] counts = FrequencyCounter.toCounts(totals);
+		for (int s = 0; s < HuffmanCodec.MAX_COUNT; s++) weights[s] = Math.max(1, counts[s]);
+		weights[HuffmanCodec.PSEUDO_EOF] = 1;
+		int[] lengths = new CodeLengthBuilder(weights.length).build(weights, new int[weights.length]);
+		if (PackageMerge.maxLength(lengths) > MAX_LENGTH) lengths = PackageMerge.lengths(weights, MAX_LENGTH);
+		return lengths;
+	}
+	/**
+	 * Stores a table and returns its ID. Registering a table that already exists is harmless.
+	 *
+	 * @param lengths (int[]) code lengths over PSEUDO_EOF + 1 symbols, all nonzero
+	 * @return (int) the table ID
+	 * @throws IOException if the table is incomplete or its ID belongs to another table
+	 */
+	public int register(int[] lengths) throws IOException {
+		if (lengths.length != HuffmanCodec.PSEUDO_EOF + 1) throw new IOException("Table must cover " + (HuffmanCodec.PSEUDO_EOF + 1) + " symbols.");
+		for (int len : lengths) if (len == 0) throw new IOException("Table must give every symbol a code.");
+		int id = id(lengths);
+		Path file = file(id);
+		if (Files.exists(file)) {
+			if (!Arrays.equals(lengths, codeTable(id).getLengths())) throw new IOException("Table ID " + name(id) + " is already in use.");
+			return id;
+		}
+		Files.createDirectories(dir);
+		Path temp = Files.createTempFile(dir, name(id), ".tmp");
+		try (OutputStream out = Files.newOutputStream(temp)) {
+			BitWriter writer = new BitWriter(out);
+			writer.write(TABLE_MAGIC, 32);
+			CodeLengths.write(writer, lengths);
+			writer.flush();
+		}
+		Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		return id;
+	}
+	/**
+	 * Returns the encoding table with the given ID, loading it on first use.
+	 *
+	 * @param id (int)
+	 * @return (CodeTable)
+	 * @throws IOException if no such table is registered
+	 */
+	public CodeTable codeTable(int id) throws IOException {
+		CodeTable table = codes.get(id);
+		if (table == null) {
+			table = CodeTable.canonical(load(id));
+			CodeTable raced = codes.putIfAbsent(id, table);
+			if (raced != null) table = raced;
+		}
+		return table;
+	}
+	/**
+	 * Returns the decoding table with the given ID, building it on first use.
+	 *
+	 * @param id (int)
+	 * @return (DecodeTable)
+	 * @throws IOException if no such table is registered
+	 */
+	public DecodeTable decodeTable(int id) throws IOException {
+		DecodeTable table = decoders.get(id);
+		if (table == null) {
+			table = new DecodeTable(codeTable(id));
+			DecodeTable raced = decoders.putIfAbsent(id, table);
+			if (raced != null) table = raced;
+		}
+		return table;
+	}
+	/**
+	 * Lists the IDs of the registered tables.
+	 * @return (List)
+	 * @throws IOException
+	 */
+	public List<Integer> ids() throws IOException {
+		List<Integer> ids = new ArrayList<>();
+		if (!Files.isDirectory(dir)) return ids;
+		try (Stream<Path> files = Files.list(dir)) {
+			for (Iterator<Path> it = files.iterator(); it.hasNext(); ) {
+				String name = it.next().getFileName().toString();
+				if (!name.endsWith(TABLE_EXTENSION)) continue;
+				try { ids.add(Integer.parseUnsignedInt(name.substring(0, name.length() - TABLE_EXTENSION.length()), 16)); }
+				catch (NumberFormatException e) { }
+			}
+		}
+		return ids;
+	}
+	private int[] load(int id) throws IOException {
+		Path file = file(id);
+		if (!Files.exists(file)) throw new IOException("Unknown table " + name(id) + ".");
+		try (InputStream in = Files.newInputStream(file)) {
+			BitReader reader = new BitReader(in, 1 << 10);
+			if (reader.readBits(32) != TABLE_MAGIC) throw new IOException("Table " + name(id) + " is corrupted.");
+			int[] lengths = CodeLengths.read(reader, HuffmanCodec.PSEUDO_EOF + 1);
+			for (int len : lengths) if (len == 0) throw new IOException("Table " + name(id) + " is corrupted.");
+			return lengths;
+		}
+	}
+	private Path file(int id) { return dir.resolve(name(id) + TABLE_EXTENSION); }
+	/**
+	 * Returns the ID as 8 hex digits, as used in file names and on the command line.
+	 * @param id (int)
+	 * @return (String)
+	 */
+	public static String name(int id) { return String.format("%08x", id); }
+	/**
+	 * Parses an ID written by {@link #name}.
+	 * @param name (String)
+	 * @return (int)
+	 * @throws NumberFormatException
+	 */
+	public static int parse(String name) { return Integer.parseUnsignedInt(name, 16); }
+	private static int id(int[] lengths) {
+		CRC32 crc = new CRC32();
+		for (int len : lengths) crc.update(len);
+		return (int) crc.getValue();
+	}
+	public Path getDirectory() { return dir; }
+}
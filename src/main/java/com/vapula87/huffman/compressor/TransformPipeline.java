@@ -0,0 +1,97 @@
+package com.vapula87.huffman.compressor;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import com.vapula87.huffman.interfaces.IBlockTransform;
+/**
+ * Chain of reversible block transforms run before entropy coding.<br><br>
+ *
+ * The stages run in a fixed order, {@link RunLength}, {@link BurrowsWheeler}, {@link MoveToFront},
+ * each only if its flag is selected, and are undone in reverse order. Every selected stage stores
+ * its parameter as 32 bits, in stage order, so the flags alone describe the layout.
+ *
+ * @author Michael Hackett
+ */
+public class TransformPipeline {
+	public static final int 		RLE = 1, BWT = 2, MTF = 4, ALL = RLE | BWT | MTF;
+	private static final IBlockTransform[] STAGES = { new RunLength(), new BurrowsWheeler(), new MoveToFront() };
+	private TransformPipeline() { }
+	/**
+	 * Runs the selected stages over src[off..off+len).
+	 *
+	 * @param stages (int) RLE, BWT and/or MTF
+	 * @param src (byte[])
+	 * @param off (int)
+	 * @param len (int)
+	 * @param header (DataOutputStream) receives each stage's parameter
+	 * @return (byte[]) the transformed data
+	 * @throws IOException
+	 */
+	public static byte[] forward(int stages, byte[] src, int off, int len, DataOutputStream header) throws IOException {
+		byte[] data = Arrays.copyOfRange(src, off, off + len);
+		int[] parameter = new int[1];
+		for (IBlockTransform stage : STAGES) {
+			if ((stages & stage.getFlag()) == 0) continue;
+			parameter[0] = 0;
+			data = stage.forward(data, data.length, parameter);
+			header.writeInt(parameter[0]);
+		}
+		return data;
+	}
+	/**
+	 * Reads the parameters written by {@link #forward}.
+	 *
+	 * @param stages (int)
+	 * @param header (DataInputStream)
+	 * @return (int[]) parameters indexed by stage
+	 * @throws IOException
+	 */
+	public static int[] readParameters(int stages, DataInputStream header) throws IOException {
+		int[] parameters = new int[STAGES.length];
+		for (int s = 0; s < STAGES.length; s++) if ((stages & STAGES[s].getFlag()) != 0) parameters[s] = header.readInt();
+		return parameters;
+	}
+	/**
+	 * Undoes the selected stages in reverse order.
+	 *
+	 * @param stages (int)
+	 * @param parameters (int[]) as returned by {@link #readParameters}
+	 * @param data (byte[])
+	 * @return (byte[]) the original data
+	 * @throws IOException if the data is corrupted
+	 */
+	public static byte[] inverse(int stages, int[] parameters, byte[] data) throws IOException {
+		for (int s = STAGES.length - 1; s >= 0; s--) {
+			if ((stages & STAGES[s].getFlag()) != 0) data = STAGES[s].inverse(data, data.length, parameters[s]);
+		}
+		return data;
+	}
+	/**
+	 * Returns the number of header bytes the selected stages use.
+	 * @param stages (int)
+	 * @return (int)
+	 */
+	public static int headerBytes(int stages) { return Integer.bitCount(stages & ALL) * 4; }
+	/**
+	 * Parses a comma-separated list of stage names ("rle", "bwt", "mtf").
+	 *
+	 * @param names (String)
+	 * @return (int) the stage flags
+	 * @throws IllegalArgumentException for an unknown name
+	 */
+	public static int parse(String names) {
+		int stages = 0;
+		for (String name : names.split(",")) {
+			switch (name.trim().toLowerCase()) {
+				case "rle": stages |= RLE; break;
+				case "bwt": stages |= BWT; break;
+				case "mtf": stages |= MTF; break;
+				default: throw new IllegalArgumentException("Unknown transform: " + name);
+			}
+		}
+		return stages;
+	}
+}
@@ -0,0 +1,113 @@
+package com.vapula87.huffman.compressor;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import com.vapula87.huffman.interfaces.IBlockModel;
+import com.vapula87.huffman.structures.CodeLengthBuilder;
+import com.vapula87.huffman.structures.CodeLengths;
+import com.vapula87.huffman.structures.CodeTable;
+import com.vapula87.huffman.structures.DecodeTable;
+import com.vapula87.huffman.structures.PackageMerge;
+import com.vapula87.huffman.utilities.BitReader;
+import com.vapula87.huffman.utilities.BitWriter;
+/**
+ * 16-bit symbol model for a block: each pair of bytes is one symbol of a 65536-symbol alphabet.<br><br>
+ *
+ * UTF-16 text and fixed-width binary records repeat far fewer pairs than their byte counts suggest,
+ * so coding pairs captures that structure and halves the decode steps per output byte.<br>
+ * The header is {@link CodeLengths}, which lists only the symbols in use, so it scales with the number
+ * of distinct pairs rather than with the alphabet.<br>
+ * Counts, lengths and codes are likewise kept only for the pairs in use, as parallel arrays sorted by symbol;
+ * the only alphabet-sized arrays are per-thread scratch that is reused from block to block.<br><br>
+ *
+ * Layout: code lengths over 65536 symbols, the codes of each big-endian byte pair, then the last
+ * byte as 8 raw bits if the block length is odd.
+ *
+ * @author Michael Hackett
+ */
+public class WideModel implements IBlockModel {
+	public static final int 	SYMBOLS = 1 << 16;
+	private static final ThreadLocal<CodeLengthBuilder> BUILDER = ThreadLocal.withInitial(() -> new CodeLengthBuilder(SYMBOLS));
+	private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+	private final int[] 		symbols, lengths;
+	private final long 			bits;
+	private WideModel(int[] symbols, int[] lengths, long bits) {
+		this.symbols = symbols;
+		this.lengths = lengths;
+		this.bits = bits;
+	}
+	/**
+	 * Counts the block's byte pairs and builds their code lengths.
+	 *
+	 * @param src (byte[])
+	 * @param off (int)
+	 * @param len (int)
+	 * @param maxLength (int) longest code allowed, or 0 for no limit
+	 * @return (WideModel)
+	 */
+	public static WideModel build(byte[] src, int off, int len, int maxLength) {
+		Scratch scratch = SCRATCH.get();
+		int[] counts = scratch.counts, seen = scratch.index;
+		int used = 0;
+		for (int w = off, end = off + (len & ~1); w < end; w += 2) {
+			int symbol = (src[w] & 0xFF) << 8 | (src[w + 1] & 0xFF);
+			if (counts[symbol]++ == 0) seen[used++] = symbol;
+		}
+		Arrays.sort(seen, 0, used);
+		int[] symbols = Arrays.copyOf(seen, used), weights = new int[used];
+		for (int x = 0; x < used; x++) {
+			weights[x] = counts[symbols[x]];
+			counts[symbols[x]] = 0;
+		}
+		// Both builders break ties by position, and positions follow symbol order, so the lengths match a dense build
+		int[] lengths = BUILDER.get().build(weights, new int[used]);
+		if (maxLength > 0 && PackageMerge.maxLength(lengths) > maxLength) lengths = PackageMerge.lengths(weights, maxLength);
+		long bits = CodeLengths.size(SYMBOLS, lengths) + HuffmanCodec.BITS_PER_WORD * (len & 1);
+		for (int x = 0; x < used; x++) bits += (long) weights[x] * lengths[x];
+		return new WideModel(symbols, lengths, bits);
+	}
+	@Override
+	public int getModel() { return BlockCodec.MODEL_WIDE; }
+	@Override
+	public long getBits() { return bits; }
+	@Override
+	public void write(BitWriter writer, byte[] src, int off, int len) throws IOException {
+		CodeLengths.write(writer, SYMBOLS, symbols, lengths);
+		// Canonical order is (length, symbol), and positions follow symbol order, so codes can be assigned by position
+		long[] codes = CodeTable.canonical(lengths).getCodes();
+		int[] index = SCRATCH.get().index;
+		for (int x = 0; x < symbols.length; x++) index[symbols[x]] = x;
+		int end = off + (len & ~1);
+		for (int w = off; w < end; w += 2) {
+			int x = index[(src[w] & 0xFF) << 8 | (src[w + 1] & 0xFF)];
+			writer.write(codes[x], lengths[x]);
+		}
+		if ((len & 1) != 0) writer.write(src[end] & 0xFF, HuffmanCodec.BITS_PER_WORD);
+	}
+	/**
+	 * Reads a model written by {@link #write} and decodes the block.
+	 *
+	 * @param reader (BitReader)
+	 * @param block (byte[]) receives rawLen bytes
+	 * @param rawLen (int)
+	 * @throws IOException if the header or codes are malformed
+	 */
+	public static void read(BitReader reader, byte[] block, int rawLen) throws IOException {
+		DecodeTable table = new DecodeTable(CodeTable.canonical(CodeLengths.read(reader, SYMBOLS)));
+		int end = rawLen & ~1;
+		for (int w = 0; w < end; w += 2) {
+			int symbol = table.decode(reader);
+			block[w] = (byte) (symbol >>> 8);
+			block[w + 1] = (byte) symbol;
+		}
+		if ((rawLen & 1) != 0) block[end] = (byte) reader.readBits(HuffmanCodec.BITS_PER_WORD);
+	}
+	/**
+	 * Per-thread alphabet-sized arrays. counts is all zeros between blocks; index holds the symbols seen
+	 * while counting, then maps each used symbol to its position while writing.
+	 */
+	private static class Scratch {
+		final int[] counts = new int[SYMBOLS], index = new int[SYMBOLS];
+	}
+}
@@ -0,0 +1,33 @@
+package com.vapula87.huffman.interfaces;
+
+import com.vapula87.huffman.utilities.BitWriter;
+
+import java.io.IOException;
+
+/**
+ * An alternative way of coding one block, built for that block's data.<br>
+ * The block codec builds the enabled models and keeps whichever codes the block in the fewest bits.
+ *
+ * @author Michael Hackett
+ */
+public interface IBlockModel {
+	/**
+	 * Returns the model byte that starts the block's payload.
+	 * @return (int)
+	 */
+	public int getModel();
+	/**
+	 * Returns the size of the model's header and codes in bits.
+	 * @return (long)
+	 */
+	public long getBits();
+	/**
+	 * Writes the model's header and the coded block.
+	 * @param writer (BitWriter)
+	 * @param src (byte[])
+	 * @param off (int)
+	 * @param len (int)
+	 * @throws IOException
+	 */
+	public void write(BitWriter writer, byte[] src, int off, int len) throws IOException;
+}
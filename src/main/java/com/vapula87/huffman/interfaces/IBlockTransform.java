@@ -0,0 +1,35 @@
+package com.vapula87.huffman.interfaces;
+
+import java.io.IOException;
+
+/**
+ * A reversible transform applied to a block before it is entropy coded.<br>
+ * Each transform owns one flag bit, recorded in the block so the decoder can undo it, and may
+ * store one integer parameter (for example the BWT primary index) alongside.
+ *
+ * @author Michael Hackett
+ */
+public interface IBlockTransform {
+	/**
+	 * Returns the flag bit that marks this transform in a block.
+	 * @return (int)
+	 */
+	public int getFlag();
+	/**
+	 * Transforms the data.
+	 * @param src (byte[])
+	 * @param len (int) bytes of src to transform
+	 * @param parameter (int[]) receives the parameter to store in element 0
+	 * @return (byte[]) the transformed data, exactly as long as its content
+	 */
+	public byte[] forward(byte[] src, int len, int[] parameter);
+	/**
+	 * Undoes {@link #forward}.
+	 * @param src (byte[])
+	 * @param len (int)
+	 * @param parameter (int) the stored parameter
+	 * @return (byte[]) the original data, exactly as long as its content
+	 * @throws IOException if the data could not have been produced by forward
+	 */
+	public byte[] inverse(byte[] src, int len, int parameter) throws IOException;
+}
@@ -0,0 +1,17 @@
+package com.vapula87.huffman.interfaces;
+
+import com.vapula87.huffman.compressor.CodecMetrics;
+
+/**
+ * Receives the metrics of each file or stream the compression engine finishes.<br>
+ * Implementations must not assume they are called on any particular thread.
+ *
+ * @author Michael Hackett
+ */
+public interface IMetricsListener {
+	/**
+	 * Called once an operation has completed successfully.
+	 * @param metrics (CodecMetrics)
+	 */
+	public void completed(CodecMetrics metrics);
+}
@@ -0,0 +1,24 @@
+package com.vapula87.huffman.interfaces;
+
+/**
+ * Receives progress updates from the compression engine.<br>
+ * Implementations must not assume they are called on any particular thread.
+ *
+ * @author Michael Hackett
+ */
+public interface IProgressListener {
+	/**
+	 * Called when the fraction of work completed changes.
+	 * @param fraction (double) between 0 and 1
+	 */
+	public void update(double fraction);
+	/**
+	 * Called at a bounded rate with the bytes processed so far. The default passes on the fraction
+	 * when the total is known and ignores the update otherwise.
+	 * @param done (long)
+	 * @param total (long) or ProgressCounter.UNKNOWN
+	 */
+	public default void update(long done, long total) {
+		if (total > 0) update(Math.min(1.0, (double) done / total));
+	}
+}
@@ -0,0 +1,148 @@
+package com.vapula87.huffman.structures;
+
+import com.vapula87.huffman.utilities.BitReader;
+import com.vapula87.huffman.utilities.BitWriter;
+
+import java.io.IOException;
+/**
+ * Adaptive Huffman tree (FGK) for single-pass coding.<br><br>
+ *
+ * Encoder and decoder start from the same tree holding only the NYT (not yet transmitted) leaf and
+ * update it identically after every symbol, so no table is ever stored.<br>
+ * A symbol seen before is sent as the path to its leaf. A new symbol is sent as the path to the NYT
+ * leaf followed by the raw symbol number, after which the NYT leaf splits into a new NYT leaf and the
+ * symbol's leaf.<br><br>
+ *
+ * Nodes are numbered so that weights never decrease with the number and siblings are adjacent
+ * (the sibling property). Before a node's weight is incremented it is swapped with the highest-numbered
+ * node of the same weight, which keeps the tree a Huffman tree for the counts seen so far.<br>
+ * Memory is bounded by the alphabet: at most 2 * symbols + 1 nodes.
+ *
+ * @author Michael Hackett
+ */
+public class AdaptiveHuffTree {
+	private static final int 	NYT = -1;
+	private final Node[] 		leaves, ordered;
+	private final int[] 		path;
+	private final int 			symbolBits;
+	private Node 				root, nyt;
+	private static class Node {
+		private Node leftChild, rightChild, parent;
+		private long weight;
+		private int order;
+		private final int symbol;
+		private Node(int symbol, int order, Node parent) {
+			this.symbol = symbol;
+			this.order = order;
+			this.parent = parent;
+		}
+	}
+	/**
+	 * Creates a tree holding only the NYT leaf.
+	 * @param symbols (int) size of the alphabet
+	 */
+	public AdaptiveHuffTree(int symbols) {
+		leaves = new Node[symbols];
+		ordered = new Node[2 * symbols + 1];
+		path = new int[ordered.length];
+		symbolBits = CodeLengths.bitsFor(symbols);
+		root = nyt = new Node(NYT, ordered.length - 1, null);
+		ordered[root.order] = root;
+	}
+	/**
+	 * Writes the code for the symbol and updates the tree.
+	 *
+	 * @param symbol (int)
+	 * @param writer (BitWriter)
+	 * @throws IOException
+	 */
+	public void encode(int symbol, BitWriter writer) throws IOException {
+		Node leaf = leaves[symbol];
+		if (leaf == null) {
+			writePath(nyt, writer);
+			writer.write(symbol, symbolBits);
+		}
+		else writePath(leaf, writer);
+		update(symbol);
+	}
+	/**
+	 * Reads the code for one symbol and updates the tree.
+	 *
+	 * @param reader (BitReader)
+	 * @return (int) the symbol
+	 * @throws IOException if the stream ends first or names an impossible symbol
+	 */
+	public int decode(BitReader reader) throws IOException {
+		Node node = root;
+		while (node.leftChild != null) node = reader.readBit() == 0 ? node.leftChild : node.rightChild;
+		int symbol = node.symbol;
+		if (node == nyt) {
+			symbol = reader.readBits(symbolBits);
+			if (symbol >= leaves.length || leaves[symbol] != null) throw new IOException("Decompression failed: File corrupted.");
+		}
+		update(symbol);
+		return symbol;
+	}
+	/**
+	 * Writes the edges from the root down to the node. Left is 0, right is 1.
+	 */
+	private void writePath(Node node, BitWriter writer) throws IOException {
+		int depth = 0, len = 0;
+		for (; node.parent != null; node = node.parent) path[depth++] = node == node.parent.rightChild ? 1 : 0;
+		long code = 0;
+		while (depth > 0) {
+			code = code << 1 | path[--depth];
+			if (++len == 32) {
+				writer.write(code, len);
+				code = len = 0;
+			}
+		}
+		if (len > 0) writer.write(code, len);
+	}
+	/**
+	 * Adds the symbol if it is new, then increments the weights from its leaf up to the root.
+	 */
+	private void update(int symbol) {
+		Node node = leaves[symbol];
+		if (node == null) {
+			Node parent = nyt;
+			nyt = new Node(NYT, parent.order - 2, parent);
+			node = new Node(symbol, parent.order - 1, parent);
+			parent.leftChild = nyt;
+			parent.rightChild = node;
+			ordered[nyt.order] = nyt;
+			ordered[node.order] = node;
+			leaves[symbol] = node;
+		}
+		for (; node != null; node = node.parent) {
+			Node leader = node;
+			for (int o = node.order + 1; o < ordered.length && ordered[o].weight == node.weight; o++) leader = ordered[o];
+			if (leader != node && leader != node.parent) swap(node, leader);
+			node.weight++;
+		}
+	}
+	/**
+	 * Swaps two subtrees and their numbers.
+	 */
+	private void swap(Node a, Node b) {
+		Node aParent = a.parent, bParent = b.parent;
+		boolean aRight = aParent.rightChild == a, bRight = bParent.rightChild == b;
+		if (aRight) aParent.rightChild = b;
+		else aParent.leftChild = b;
+		if (bRight) bParent.rightChild = a;
+		else bParent.leftChild = a;
+		a.parent = bParent;
+		b.parent = aParent;
+		int order = a.order;
+		a.order = b.order;
+		b.order = order;
+		ordered[a.order] = a;
+		ordered[b.order] = b;
+	}
+	/**
+	 * Returns whether the symbol has already been transmitted.
+	 * @param symbol (int)
+	 * @return (boolean)
+	 */
+	public boolean contains(int symbol) { return leaves[symbol] != null; }
+}
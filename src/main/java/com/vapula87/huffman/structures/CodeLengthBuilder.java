@@ -0,0 +1,74 @@
+package com.vapula87.huffman.structures;
+
+import java.util.Arrays;
+/**
+ * Allocation-free Huffman code length builder.<br><br>
+ *
+ * Used symbols are packed into primitive sort keys (weight, then symbol) and merged with the
+ * two-queue method: leaves come off the sorted array, and merged nodes are appended to a second
+ * array whose weights never decrease, so the two smallest nodes are always at one of the two fronts.<br>
+ * Parents are recorded by index and depths are resolved from the root down. All arrays are sized
+ * for the alphabet once and reused, so building a table allocates nothing per node or per call.<br>
+ * {@link ITreeMaker} remains the reference implementation; both produce optimal lengths, though ties may
+ * be broken differently. An instance is not thread-safe.
+ *
+ * @author Michael Hackett
+ */
+public class CodeLengthBuilder {
+	private static final int 	SYMBOL_BITS = 20;
+	private final long[] 		leaves, merged;
+	private final int[] 		leafParent, mergedParent, depth;
+	/**
+	 * Creates a builder for alphabets of up to the given size.
+	 * @param symbols (int) at most 2^20
+	 */
+	public CodeLengthBuilder(int symbols) {
+		if (symbols > 1 << SYMBOL_BITS) throw new IllegalArgumentException("Alphabet too large: " + symbols);
+		leaves = new long[symbols];
+		merged = new long[symbols];
+		leafParent = new int[symbols];
+		mergedParent = new int[symbols];
+		depth = new int[symbols];
+	}
+	/**
+	 * Computes optimal code lengths for the weights.
+	 *
+	 * @param weights (int[]) symbol weights, 0 for unused symbols
+	 * @param lengths (int[]) receives the code lengths, 0 for unused symbols
+	 * @return (int[]) lengths
+	 */
+	public int[] build(int[] weights, int[] lengths) {
+		int n = 0;
+		for (int s = 0; s < weights.length; s++) {
+			lengths[s] = 0;
+			if (weights[s] > 0) leaves[n++] = (long) weights[s] << SYMBOL_BITS | s;
+		}
+		if (n == 0) return lengths;
+		if (n == 1) {
+			lengths[symbol(leaves[0])] = 1;
+			return lengths;
+		}
+		Arrays.sort(leaves, 0, n);
+		int leaf = 0, head = 0;
+		for (int m = 0; m < n - 1; m++) {
+			long sum = 0;
+			for (int pick = 0; pick < 2; pick++) {
+				if (leaf < n && (head == m || weight(leaves[leaf]) <= merged[head])) {
+					sum += weight(leaves[leaf]);
+					leafParent[leaf++] = m;
+				}
+				else {
+					sum += merged[head];
+					mergedParent[head++] = m;
+				}
+			}
+			merged[m] = sum;
+		}
+		depth[n - 2] = 0;
+		for (int m = n - 3; m >= 0; m--) depth[m] = depth[mergedParent[m]] + 1;
+		for (int x = 0; x < n; x++) lengths[symbol(leaves[x])] = depth[leafParent[x]] + 1;
+		return lengths;
+	}
+	private static long weight(long key) { return key >>> SYMBOL_BITS; }
+	private static int symbol(long key) { return (int) (key & ((1 << SYMBOL_BITS) - 1)); }
+}
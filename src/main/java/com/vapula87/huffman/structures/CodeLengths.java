@@ -0,0 +1,137 @@
+package com.vapula87.huffman.structures;
+
+import com.vapula87.huffman.utilities.BitReader;
+import com.vapula87.huffman.utilities.BitWriter;
+
+import java.io.IOException;
+/**
+ * Compact serialization of per-symbol code lengths for canonical Huffman codes.<br><br>
+ *
+ * Layout: a 3-bit field width, a 1-bit mode, the set of symbols in use, then one length per used symbol.<br>
+ * The set is written either as a presence bitmap over the whole alphabet or as a count followed by
+ * the symbol numbers, whichever is smaller, so the header scales with the number of symbols in use.
+ *
+ * @author Michael Hackett
+ */
+public class CodeLengths {
+	private static final int 	WIDTH_BITS = 3;
+	private CodeLengths() { }
+	/**
+	 * Writes the code lengths.
+	 *
+	 * @param writer (BitWriter)
+	 * @param lengths (int[]) indexed by symbol, 0 for unused symbols
+	 * @throws IOException
+	 */
+	public static void write(BitWriter writer, int[] lengths) throws IOException {
+		int used = 0, max = 0, symbolBits = bitsFor(lengths.length);
+		for (int len : lengths) {
+			if (len > 0) used++;
+			max = Math.max(max, len);
+		}
+		int width = bitsFor(max + 1);
+		boolean list = (long) used * symbolBits + symbolBits < lengths.length;
+		writer.write(width, WIDTH_BITS);
+		writer.writeBit(list ? 1 : 0);
+		if (list) {
+			writer.write(used, symbolBits);
+			for (int s = 0; s < lengths.length; s++) if (lengths[s] > 0) writer.write(s, symbolBits);
+		}
+		else for (int len : lengths) writer.writeBit(len > 0 ? 1 : 0);
+		for (int len : lengths) if (len > 0) writer.write(len, width);
+	}
+	/**
+	 * Writes code lengths given only for the symbols in use; the output is the same as {@link #write(BitWriter, int[])}
+	 * over the dense array.
+	 *
+	 * @param writer (BitWriter)
+	 * @param symbols (int) size of the alphabet
+	 * @param used (int[]) symbols in use, ascending
+	 * @param lengths (int[]) code length of each used symbol
+	 * @throws IOException
+	 */
+	public static void write(BitWriter writer, int symbols, int[] used, int[] lengths) throws IOException {
+		int max = 0, symbolBits = bitsFor(symbols);
+		for (int len : lengths) max = Math.max(max, len);
+		int width = bitsFor(max + 1);
+		boolean list = (long) used.length * symbolBits + symbolBits < symbols;
+		writer.write(width, WIDTH_BITS);
+		writer.writeBit(list ? 1 : 0);
+		if (list) {
+			writer.write(used.length, symbolBits);
+			for (int s : used) writer.write(s, symbolBits);
+		}
+		else for (int s = 0, x = 0; s < symbols; s++) {
+			boolean present = x < used.length && used[x] == s;
+			writer.writeBit(present ? 1 : 0);
+			if (present) x++;
+		}
+		for (int len : lengths) writer.write(len, width);
+	}
+	/**
+	 * Reads code lengths written by {@link #write} and checks that they form a valid prefix code.
+	 *
+	 * @param reader (BitReader)
+	 * @param symbols (int) size of the alphabet
+	 * @return (int[]) lengths indexed by symbol
+	 * @throws IOException if the lengths are malformed
+	 */
+	public static int[] read(BitReader reader, int symbols) throws IOException {
+		int width = reader.readBits(WIDTH_BITS), symbolBits = bitsFor(symbols);
+		boolean list = reader.readBit() == 1;
+		int[] lengths = new int[symbols];
+		boolean[] present = new boolean[symbols];
+		if (list) {
+			int used = reader.readBits(symbolBits);
+			for (int i = 0; i < used; i++) {
+				int s = reader.readBits(symbolBits);
+				if (s >= symbols) throw new IOException("Decompression failed: File corrupted.");
+				present[s] = true;
+			}
+		}
+		else for (int s = 0; s < symbols; s++) present[s] = reader.readBit() == 1;
+		double kraft = 0;
+		for (int s = 0; s < symbols; s++) {
+			if (!present[s]) continue;
+			lengths[s] = reader.readBits(width);
+			if (lengths[s] == 0 || lengths[s] > BitReader.MAX_PEEK) throw new IOException("Decompression failed: File corrupted.");
+			kraft += Math.scalb(1.0, -lengths[s]);
+		}
+		if (kraft > 1.0) throw new IOException("Decompression failed: File corrupted.");
+		return lengths;
+	}
+	/**
+	 * Returns the number of bits {@link #write(BitWriter, int[])} will produce.
+	 *
+	 * @param lengths (int[])
+	 * @return (long)
+	 */
+	public static long size(int[] lengths) {
+		int used = 0, max = 0, symbolBits = bitsFor(lengths.length);
+		for (int len : lengths) {
+			if (len > 0) used++;
+			max = Math.max(max, len);
+		}
+		long set = Math.min((long) used * symbolBits + symbolBits, lengths.length);
+		return WIDTH_BITS + 1 + set + (long) used * bitsFor(max + 1);
+	}
+	/**
+	 * Returns the number of bits {@link #write(BitWriter, int, int[], int[])} will produce.
+	 *
+	 * @param symbols (int) size of the alphabet
+	 * @param lengths (int[]) code length of each used symbol
+	 * @return (long)
+	 */
+	public static long size(int symbols, int[] lengths) {
+		int max = 0, symbolBits = bitsFor(symbols);
+		for (int len : lengths) max = Math.max(max, len);
+		long set = Math.min((long) lengths.length * symbolBits + symbolBits, symbols);
+		return WIDTH_BITS + 1 + set + (long) lengths.length * bitsFor(max + 1);
+	}
+	/**
+	 * Returns the number of bits needed to write values below n.
+	 * @param n (int)
+	 * @return (int)
+	 */
+	public static int bitsFor(int n) { return Math.max(1, 32 - Integer.numberOfLeadingZeros(n - 1)); }
+}
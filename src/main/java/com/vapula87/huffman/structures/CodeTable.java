@@ -0,0 +1,88 @@
+package com.vapula87.huffman.structures;
+
+import com.vapula87.huffman.interfaces.Entry;
+/**
+ * Primitive code table for encoding.<br><br>
+ *
+ * Codes are held as right-aligned bit patterns with their lengths, indexed directly by symbol,
+ * so the encode loop needs two array reads per symbol and no boxing or string walking.
+ *
+ * @author Michael Hackett
+ */
+public class CodeTable {
+	private final long[] 	codes;
+	private final int[] 	lengths;
+	/**
+	 * Wraps existing code and length arrays.
+	 * @param codes (long[]) right-aligned code bits, indexed by symbol
+	 * @param lengths (int[]) code lengths, 0 for unused symbols
+	 */
+	public CodeTable(long[] codes, int[] lengths) {
+		this.codes = codes;
+		this.lengths = lengths;
+	}
+	/**
+	 * Converts a map of symbols to code strings, as produced by {@link HuffTree#encode}.
+	 *
+	 * @param map (SortedTableMap)
+	 * @param symbols (int) size of the alphabet
+	 * @return (CodeTable)
+	 */
+	public static CodeTable fromMap(SortedTableMap<Integer, String> map, int symbols) {
+		long[] codes = new long[symbols];
+		int[] lengths = new int[symbols];
+		for (Entry<Integer, String> x : map.entrySet()) {
+			String code = x.getValue();
+			long bits = 0;
+			for (int w = 0; w < code.length(); w++) bits = (bits << 1) | (code.charAt(w) - '0');
+			codes[x.getKey()] = bits;
+			lengths[x.getKey()] = code.length();
+		}
+		return new CodeTable(codes, lengths);
+	}
+	/**
+	 * Assigns canonical codes to the given lengths.<br><br>
+	 *
+	 * Symbols are ordered by code length and then by symbol number, and each receives the next
+	 * code of its length, so the lengths alone are enough to reproduce every code.
+	 *
+	 * @param lengths (int[]) code lengths indexed by symbol, 0 for unused symbols
+	 * @return (CodeTable)
+	 */
+	public static CodeTable canonical(int[] lengths) {
+		int max = 0;
+		for (int len : lengths) max = Math.max(max, len);
+		int[] lengthCount = new int[max + 1];
+		for (int len : lengths) if (len > 0) lengthCount[len]++;
+		long[] next = new long[max + 1];
+		long code = 0;
+		for (int len = 1; len <= max; len++) {
+			code = (code + lengthCount[len - 1]) << 1;
+			next[len] = code;
+		}
+		long[] codes = new long[lengths.length];
+		for (int s = 0; s < lengths.length; s++) if (lengths[s] > 0) codes[s] = next[lengths[s]]++;
+		return new CodeTable(codes, lengths.clone());
+	}
+	/**
+	 * Converts the table back into a map of symbols to code strings, for display.
+	 *
+	 * @return (SortedTableMap)
+	 */
+	public SortedTableMap<Integer, String> toMap() {
+		SortedTableMap<Integer, String> map = new SortedTableMap<>();
+		StringBuilder code = new StringBuilder();
+		for (int s = 0; s < lengths.length; s++) {
+			if (lengths[s] == 0) continue;
+			code.setLength(0);
+			for (int w = lengths[s] - 1; w >= 0; w--) code.append((codes[s] >>> w) & 1);
+			map.put(s, code.toString());
+		}
+		return map;
+	}
+	public long[] getCodes() { return codes; }
+	public int[] getLengths() { return lengths; }
+	public long getCode(int symbol) { return codes[symbol]; }
+	public int getLength(int symbol) { return lengths[symbol]; }
+	public int size() { return lengths.length; }
+}
@@ -0,0 +1,123 @@
+package com.vapula87.huffman.structures;
+
+import com.vapula87.huffman.utilities.BitReader;
+
+import java.io.IOException;
+/**
+ * Table-driven Huffman decoder.<br><br>
+ *
+ * The first PRIMARY_BITS bits of the stream index a primary table whose entries hold the symbol
+ * and code length together, so most codes resolve in a single array access.<br>
+ * Codes longer than the primary width link to a second-level table indexed by the following bits.
+ * When every code fits in SINGLE_BITS (for example with length-limited codes) the primary table
+ * covers them all and no second level is built.<br>
+ * The rare codes that do not fit in two levels are resolved by walking a {@link FlatDecodeTree}.
+ *
+ * @author Michael Hackett
+ */
+public class DecodeTable {
+	public static final int 	PRIMARY_BITS = 11, SUB_BITS = 12, SINGLE_BITS = 13;
+	private static final int 	LEN_BITS = 6, LEN_MASK = (1 << LEN_BITS) - 1;
+	private static final int 	LINK = 1 << 31, SUB_MASK = 31, SLOW = LINK;
+	private final int[] 		table;
+	private final int 			primaryBits;
+	private FlatDecodeTree 		slowTree;
+	/**
+	 * Builds the decoder from a code per symbol.
+	 *
+	 * @param codes (long[]) right-aligned code bits, indexed by symbol
+	 * @param lengths (int[]) code lengths, 0 for unused symbols
+	 */
+	public DecodeTable(long[] codes, int[] lengths) {
+		int maxLen = 1, slow = 0;
+		for (int len : lengths) maxLen = Math.max(maxLen, len);
+		if (maxLen > BitReader.MAX_PEEK) throw new IllegalArgumentException("Code length exceeds " + BitReader.MAX_PEEK + " bits.");
+		primaryBits = maxLen <= SINGLE_BITS ? maxLen : PRIMARY_BITS;
+		int primarySize = 1 << primaryBits;
+		int[] subMax = new int[primarySize];
+		for (int s = 0; s < lengths.length; s++) {
+			if (lengths[s] <= primaryBits) continue;
+			int prefix = (int) (codes[s] >>> (lengths[s] - primaryBits));
+			subMax[prefix] = Math.max(subMax[prefix], lengths[s]);
+		}
+		int size = primarySize;
+		for (int p = 0; p < primarySize; p++) {
+			if (subMax[p] > 0) size += 1 << Math.min(subMax[p] - primaryBits, SUB_BITS);
+		}
+		table = new int[size];
+		int offset = primarySize;
+		for (int p = 0; p < primarySize; p++) {
+			if (subMax[p] == 0) continue;
+			int subBits = Math.min(subMax[p] - primaryBits, SUB_BITS);
+			table[p] = LINK | (offset << 5) | subBits;
+			offset += 1 << subBits;
+		}
+		for (int s = 0; s < lengths.length; s++) {
+			int len = lengths[s];
+			if (len == 0) continue;
+			if (len <= primaryBits) {
+				int start = (int) (codes[s] << (primaryBits - len));
+				fill(start, 1 << (primaryBits - len), (s << LEN_BITS) | len);
+				continue;
+			}
+			int link = table[(int) (codes[s] >>> (len - primaryBits))];
+			int subBits = link & SUB_MASK, base = (link & ~LINK) >>> 5;
+			int rest = len - primaryBits;
+			int low = (int) (codes[s] & ((1L << rest) - 1));
+			if (rest <= subBits) fill(base + (low << (subBits - rest)), 1 << (subBits - rest), (s << LEN_BITS) | len);
+			else {
+				table[base + (low >>> (rest - subBits))] = SLOW;
+				slow++;
+			}
+		}
+		if (slow > 0) slowTree = new FlatDecodeTree(codes, lengths);
+	}
+	/**
+	 * Builds the decoder from a map of symbols to code strings, as produced by {@link HuffTree#encode}.
+	 *
+	 * @param map (SortedTableMap)
+	 * @param symbols (int) size of the alphabet
+	 * @return (DecodeTable)
+	 */
+	public static DecodeTable fromMap(SortedTableMap<Integer, String> map, int symbols) {
+		return new DecodeTable(CodeTable.fromMap(map, symbols));
+	}
+	/**
+	 * Builds the decoder for an encoder's code table.
+	 *
+	 * @param codes (CodeTable)
+	 */
+	public DecodeTable(CodeTable codes) { this(codes.getCodes(), codes.getLengths()); }
+	private void fill(int start, int count, int value) {
+		for (int i = 0; i < count; i++) table[start + i] = value;
+	}
+	/**
+	 * Decodes and consumes one symbol.
+	 *
+	 * @param in (BitReader)
+	 * @return (int) the symbol
+	 * @throws IOException if the bits do not form a valid code or the stream ends
+	 */
+	public int decode(BitReader in) throws IOException {
+		if (in.available() < BitReader.MAX_PEEK) in.refill();
+		int e = table[in.peek(primaryBits)];
+		if (e < 0) {
+			int subBits = e & SUB_MASK;
+			int low = (int) in.peekLong(primaryBits + subBits) & ((1 << subBits) - 1);
+			e = table[((e & ~LINK) >>> 5) + low];
+		}
+		if (e <= 0) return slowDecode(in);
+		in.skip(e & LEN_MASK);
+		if (in.available() < 0) in.refill();
+		return e >>> LEN_BITS;
+	}
+	private int slowDecode(BitReader in) throws IOException {
+		if (slowTree != null) return slowTree.decode(in);
+		throw new IOException("Decompression failed: File corrupted.");
+	}
+	/**
+	 * Returns the width of the primary lookup table.
+	 * @return (int)
+	 */
+	public int getPrimaryBits() { return primaryBits; }
+}
@@ -0,0 +1,84 @@
+package com.vapula87.huffman.structures;
+
+import com.vapula87.huffman.utilities.BitReader;
+
+import java.io.IOException;
+import java.util.Arrays;
+/**
+ * Flat, array-based Huffman decode tree.<br><br>
+ *
+ * The tree is held in a single int array: entries 2i and 2i + 1 are the left and right children of
+ * internal node i. A positive entry is the index of an internal node, a negative entry is the
+ * complement of a leaf's symbol and 0 marks a missing child (the root is never a child).<br>
+ * Decoding walks the peeked bits through the array with no objects, casts or unboxing, and a
+ * 257-symbol tree fits in 2 KB.
+ *
+ * @author Michael Hackett
+ */
+public class FlatDecodeTree {
+	private static final int 	EMPTY = 0;
+	private int[] 				children;
+	private int 				nodes = 1;
+	/**
+	 * Builds the tree from a code per symbol.
+	 *
+	 * @param codes (long[]) right-aligned code bits, indexed by symbol
+	 * @param lengths (int[]) code lengths, 0 for unused symbols
+	 * @throws IllegalArgumentException if the codes are not a prefix code
+	 */
+	public FlatDecodeTree(long[] codes, int[] lengths) {
+		int used = 0;
+		for (int len : lengths) {
+			if (len > BitReader.MAX_PEEK) throw new IllegalArgumentException("Code length exceeds " + BitReader.MAX_PEEK + " bits.");
+			if (len > 0) used++;
+		}
+		children = new int[2 * Math.max(1, used)];
+		for (int s = 0; s < lengths.length; s++) if (lengths[s] > 0) insert(codes[s], lengths[s], s);
+	}
+	/**
+	 * Builds the tree for an encoder's code table.
+	 *
+	 * @param codes (CodeTable)
+	 */
+	public FlatDecodeTree(CodeTable codes) { this(codes.getCodes(), codes.getLengths()); }
+	private void insert(long code, int len, int symbol) {
+		int node = 0;
+		for (int w = len - 1; w > 0; w--) {
+			int slot = 2 * node + (int) ((code >>> w) & 1);
+			if (children[slot] < 0) throw new IllegalArgumentException("Not a prefix code.");
+			if (children[slot] == EMPTY) {
+				if (2 * nodes + 2 > children.length) children = Arrays.copyOf(children, children.length * 2);
+				children[slot] = nodes++;
+			}
+			node = children[slot];
+		}
+		int slot = 2 * node + (int) (code & 1);
+		if (children[slot] != EMPTY) throw new IllegalArgumentException("Not a prefix code.");
+		children[slot] = ~symbol;
+	}
+	/**
+	 * Decodes and consumes one symbol.
+	 *
+	 * @param in (BitReader)
+	 * @return (int) the symbol
+	 * @throws IOException if the bits do not form a valid code or the stream ends
+	 */
+	public int decode(BitReader in) throws IOException {
+		if (in.available() < BitReader.MAX_PEEK) in.refill();
+		long bits = in.peekLong(BitReader.MAX_PEEK);
+		int node = 0, len = 0;
+		do {
+			if (len == BitReader.MAX_PEEK) throw new IOException("Decompression failed: File corrupted.");
+			node = children[2 * node + (int) ((bits >>> (BitReader.MAX_PEEK - 1 - len++)) & 1)];
+		} while (node > 0);
+		if (node == EMPTY) throw new IOException("Decompression failed: File corrupted.");
+		in.skip(len);
+		if (in.available() < 0) in.refill();
+		return ~node;
+	}
+	/**
+	 * Returns the number of internal nodes.
+	 * @return (int)
+	 */
+	public int size() { return nodes; }
+}
@@ -2,11 +2,14 @@ package com.vapula87.huffman.structures;
 
 import com.vapula87.huffman.interfaces.Entry;
 import com.vapula87.huffman.utilities.AbstractMap;
-import com.vapula87.huffman.compressor.Init;
+import com.vapula87.huffman.compressor.HuffmanCodec;
 
+import java.util.Arrays;
 import java.util.Iterator;
+import java.util.NoSuchElementException;
 public class HuffTree<T> implements Iterable<T> {
-	private LinkedQueue<Node<T>> queue;
+	private Node<T>[] nodes;
+	private int next = 0;
 	private Node<T> root, mapped;
 	private SortedTableMap<Integer, String> map;
 	private StringBuilder code;
@@ -26,7 +29,7 @@ public class HuffTree<T> implements Iterable<T> {
 	 *
 	 */
 	public HuffTree() {	
-		queue = new LinkedQueue<>(); 
+		nodes = newNodes(HuffmanCodec.MAX_ITEMS);
 		mapped = null;
 	}
 	/**
@@ -36,62 +39,64 @@ public class HuffTree<T> implements Iterable<T> {
 	 * @param input (com.vapula87.huffman.structures.Stack)
 	 */
 	public HuffTree(Stack<T> input) { 
-		root = new Node<T>(input.pop());
-		queue = new LinkedQueue<>();
+		nodes = newNodes(HuffmanCodec.MAX_ITEMS);
+		root = append(new Node<T>(input.pop()));
 		code = new StringBuilder();
 		map = new SortedTableMap<>();
 		T first, second;
 		Node<T> temp;
-		size++;
 		while (!input.isEmpty()) {	
 			first = input.pop();
 			second = input.pop();
 			temp = breadthFirst();
 			temp.addChild(first);
 			temp.addChild(second);
-			size+=2;
+			append(temp.leftChild);
+			append(temp.rightChild);
 		}
 	}
 	/**
-	 * This breadth-first insertion algorithm simply ensures entries with values do not receive children.<br>
+	 * This breadth-first insertion algorithm simply ensures entries with values do not receive children.<br><br>
+	 * Children are always given to the first childless entry without a value in breadth-first order, and are
+	 * appended after every existing node, so insertion order is breadth-first order.<br>
+	 * The nodes are kept in an array in that order and a cursor moves past each node once, making the
+	 * whole construction linear instead of rescanning from the root for every pair.
 	 *
 	 * @return (Node)
+	 * @throws NoSuchElementException if every node already has children or a value
 	 */
 	protected Node<T> breadthFirst() {
-		Node<T> found = null;
-		queue.enqueue(root);
-		while (!queue.isEmpty()) {
-			found = queue.dequeue();
-			if (((Entry) found.elem).getValue() == null) {
-				if (found.leftChild == null) break;
-			}
-			if (found.leftChild != null) {
-				queue.enqueue(found.leftChild);
-				queue.enqueue(found.rightChild);
-			}
-		}
-		while (queue.dequeue() != null);
-		return found;
+		while (next < size && ((Entry) nodes[next].elem).getValue() != null) next++;
+		if (next == size) throw new NoSuchElementException("No node left to receive children.");
+		return nodes[next++];
+	}
+	/**
+	 * Creates the node array. Generic arrays cannot be created directly, so this is the one unchecked cast.
+	 */
+	@SuppressWarnings("unchecked")
+	private static <T> Node<T>[] newNodes(int length) { return (Node<T>[]) new Node<?>[length]; }
+	/**
+	 * Adds a node to the end of the breadth-first array.
+	 */
+	private Node<T> append(Node<T> node) {
+		if (size == nodes.length) nodes = Arrays.copyOf(nodes, size * 2);
+		nodes[size++] = node;
+		return node;
 	}
 	/** Breadth-first iterator
 	 *
 	 * @return (Iterator)
 	 */
 	@Override
-	public Iterator<T> iterator() { 
-		queue.enqueue(root);
-		return new huffIterator(); 
-	}
+	public Iterator<T> iterator() { return new huffIterator(); }
 	private class huffIterator implements Iterator<T> {
-		Node<T> next = null;
+		int next = 0;
 		@Override
-		public boolean hasNext() {  return (!queue.isEmpty()); }
+		public boolean hasNext() {  return next < size; }
 		@Override
 		public T next() {
-			next = queue.dequeue();
-			if (next.leftChild != null) queue.enqueue(next.leftChild);
-			if (next.rightChild != null) queue.enqueue(next.rightChild);
-			return next.elem;
+			if (next >= size) throw new NoSuchElementException();
+			return nodes[next++].elem;
 		}
 	}
 	protected boolean hasLeft(Node<T> parent) { return parent.leftChild != null; } 
@@ -128,21 +133,23 @@ public class HuffTree<T> implements Iterable<T> {
 	 * @param input (com.vapula87.huffman.structures.Stack)
 	 */
 	protected void rebuild(Stack<T> input) {
-		root = mapped = new Node<T>(input.pop());
+		size = next = 0;
+		root = mapped = append(new Node<T>(input.pop()));
+		code = new StringBuilder();
+		map = new SortedTableMap<>();
 		T first = null;
 		T second = null;
 		Node<T> temp;
-		size++;
 		while (!input.isEmpty()) {
 			first = input.pop();
 			second = input.pop();
 			temp = breadthFirst();
 			temp.addChild(first);
 			temp.addChild(second);
-			size+=2;
+			append(temp.leftChild);
+			append(temp.rightChild);
 		}
-		((AbstractMap.MapEntry) second).setValue(Init.PSEUDO_EOF);
-		while (queue.dequeue() != null);
+		((AbstractMap.MapEntry) second).setValue(HuffmanCodec.PSEUDO_EOF);
 	}
 	/**
 	 * Assists with the decoding of the compressed file. Turns the decoding path left or right based on the bits.
@@ -1,7 +1,7 @@
 package com.vapula87.huffman.structures;
 import com.vapula87.huffman.interfaces.Entry;
 import com.vapula87.huffman.utilities.AbstractMap;
-import com.vapula87.huffman.compressor.Init;
+import com.vapula87.huffman.compressor.HuffmanCodec;
 import java.util.Comparator;
 public class ITreeMaker {
 	private HuffTree<Entry<Integer,Integer>> theTree;
@@ -24,11 +24,11 @@ public class ITreeMaker {
 	public ITreeMaker(int[] counts) {	
 		Stack<Entry<Integer,Integer>> entries = new Stack<>();
 		HeapPriorityQueue<Integer,Integer> minHeap = new HeapPriorityQueue<>(new CustomComparator());
-		for (int x = 0; x < Init.MAX_COUNT; x++) {
+		for (int x = 0; x < HuffmanCodec.MAX_COUNT; x++) {
 			if (counts[x] == 0) continue;
 			minHeap.insert(counts[x], x);
 		}
-		minHeap.insert(1, Init.PSEUDO_EOF);
+		minHeap.insert(1, HuffmanCodec.PSEUDO_EOF);
 		Entry<Integer, Integer> left, right;
 		while (minHeap.size() > 1) {
 			left = minHeap.removeMin();
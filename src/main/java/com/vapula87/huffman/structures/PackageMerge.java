@@ -0,0 +1,89 @@
+package com.vapula87.huffman.structures;
+
+import java.util.Arrays;
+/**
+ * Length-limited Huffman code lengths by the package-merge algorithm.<br><br>
+ *
+ * Finds the code lengths of minimum total size under the constraint that no code is longer than
+ * the given limit. Each level's list holds the symbols sorted by weight merged with the pairs
+ * ("packages") of the list below it. The first 2n - 2 items of the top list then decide how many
+ * times each symbol is counted, which is its code length.<br>
+ * Only the number of leading symbols taken per level is kept, so memory is O(n * limit).
+ *
+ * @author Michael Hackett
+ */
+public class PackageMerge {
+	private PackageMerge() { }
+	/**
+	 * Computes length-limited code lengths.
+	 *
+	 * @param weights (int[]) symbol weights, 0 for unused symbols
+	 * @param maxLength (int) longest code allowed; raised if it cannot hold every used symbol
+	 * @return (int[]) code lengths indexed by symbol, 0 for unused symbols
+	 */
+	public static int[] lengths(int[] weights, int maxLength) {
+		int[] lengths = new int[weights.length];
+		int used = 0;
+		for (int w : weights) if (w > 0) used++;
+		if (used == 0) return lengths;
+		Integer[] order = new Integer[used];
+		for (int s = 0, x = 0; s < weights.length; s++) if (weights[s] > 0) order[x++] = s;
+		if (used == 1) {
+			lengths[order[0]] = 1;
+			return lengths;
+		}
+		Arrays.sort(order, (a, b) -> weights[a] != weights[b] ? Integer.compare(weights[a], weights[b]) : Integer.compare(a, b));
+		maxLength = Math.max(maxLength, CodeLengths.bitsFor(used));
+		long[] leaves = new long[used];
+		for (int x = 0; x < used; x++) leaves[x] = weights[order[x]];
+		boolean[][] isLeaf = new boolean[maxLength][];
+		long[] list = leaves.clone();
+		isLeaf[0] = new boolean[used];
+		Arrays.fill(isLeaf[0], true);
+		for (int level = 1; level < maxLength; level++) {
+			int packages = list.length / 2, size = used + packages, l = 0, p = 0;
+			long[] merged = new long[size];
+			isLeaf[level] = new boolean[size];
+			for (int x = 0; x < size; x++) {
+				long pack = p < packages ? list[2 * p] + list[2 * p + 1] : Long.MAX_VALUE;
+				if (l < used && leaves[l] <= pack) {
+					merged[x] = leaves[l++];
+					isLeaf[level][x] = true;
+				}
+				else {
+					merged[x] = pack;
+					p++;
+				}
+			}
+			list = merged;
+		}
+		for (int level = maxLength - 1, take = 2 * used - 2; level >= 0 && take > 0; level--) {
+			int leafCount = 0;
+			for (int x = 0; x < take; x++) if (isLeaf[level][x]) leafCount++;
+			for (int x = 0; x < leafCount; x++) lengths[order[x]]++;
+			take = 2 * (take - leafCount);
+		}
+		return lengths;
+	}
+	/**
+	 * Returns the longest length in the array.
+	 * @param lengths (int[])
+	 * @return (int)
+	 */
+	public static int maxLength(int[] lengths) {
+		int max = 0;
+		for (int len : lengths) max = Math.max(max, len);
+		return max;
+	}
+	/**
+	 * Returns the total number of coded bits for the given weights and lengths.
+	 * @param weights (long[]) or counts per symbol
+	 * @param lengths (int[])
+	 * @return (long)
+	 */
+	public static long cost(long[] weights, int[] lengths) {
+		long bits = 0;
+		for (int s = 0; s < Math.min(weights.length, lengths.length); s++) bits += weights[s] * lengths[s];
+		return bits;
+	}
+}
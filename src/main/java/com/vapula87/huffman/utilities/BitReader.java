@@ -0,0 +1,131 @@
+package com.vapula87.huffman.utilities;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads a most-significant-bit-first bit stream through a 64-bit buffer.<br><br>
+ *
+ * Bytes are pulled from the underlying stream in large bulk reads. Up to 57 bits can be
+ * peeked at once without consuming them, which lets decoders resolve a whole code per lookup.
+ *
+ * @author Michael Hackett
+ */
+public class BitReader {
+	public static final int 	MAX_PEEK = 57;
+	private final InputStream 	stream;
+	private final byte[] 		buffer;
+	private int 				pos = 0, limit = 0, bits = 0;
+	private long 				buf = 0, bytesRead = 0;
+	private boolean 			exhausted = false;
+	/**
+	 * Creates a bit reader with a 64 KB read buffer.
+	 * @param stream (InputStream)
+	 */
+	public BitReader(InputStream stream) { this(stream, 1 << 16); }
+	/**
+	 * Creates a bit reader with the given read buffer size.
+	 * @param stream (InputStream)
+	 * @param bufferSize (int)
+	 */
+	public BitReader(InputStream stream, int bufferSize) {
+		this.stream = stream;
+		this.buffer = new byte[bufferSize];
+	}
+	/**
+	 * Tops the bit buffer up to at least 57 bits, or as many as remain in the stream.
+	 * @throws IOException if more bits were consumed than the stream contained
+	 */
+	public void refill() throws IOException {
+		while (bits <= 56) {
+			if (pos == limit) {
+				if (exhausted || (limit = stream.read(buffer, 0, buffer.length)) <= 0) {
+					exhausted = true;
+					limit = pos = 0;
+					if (bits < 0) throw new IOException("Decompression failed: Error reading bits.");
+					return;
+				}
+				bytesRead += limit;
+				pos = 0;
+			}
+			buf |= (long) (buffer[pos++] & 0xFF) << (56 - bits);
+			bits += 8;
+		}
+	}
+	/**
+	 * Returns the next n bits (1 to 31) without consuming them. Call {@link #refill()} first.
+	 * @param n (int)
+	 * @return (int)
+	 */
+	public int peek(int n) { return (int) (buf >>> (64 - n)); }
+	/**
+	 * Returns the next n bits (1 to 57) without consuming them. Call {@link #refill()} first.
+	 * @param n (int)
+	 * @return (long)
+	 */
+	public long peekLong(int n) { return buf >>> (64 - n); }
+	/**
+	 * Consumes n bits.
+	 * @param n (int)
+	 */
+	public void skip(int n) {
+		buf <<= n;
+		bits -= n;
+	}
+	/**
+	 * Reads and consumes n bits (1 to 32).
+	 * @param n (int)
+	 * @return (int)
+	 * @throws IOException if the stream ends first
+	 */
+	public int readBits(int n) throws IOException {
+		if (bits < n) refill();
+		int value = peek(n);
+		skip(n);
+		if (bits < 0) refill();
+		return value;
+	}
+	/**
+	 * Reads a single bit.
+	 * @return (int)
+	 * @throws IOException if the stream ends first
+	 */
+	public int readBit() throws IOException { return readBits(1); }
+	/**
+	 * Reads whole bytes in bulk. The stream must be at a byte boundary.
+	 * @param dst (byte[])
+	 * @param off (int)
+	 * @param len (int)
+	 * @throws IOException if the stream ends first
+	 */
+	public void readFully(byte[] dst, int off, int len) throws IOException {
+		if ((bits & 7) != 0) throw new IllegalStateException("Not at a byte boundary.");
+		for (; len > 0 && bits > 0; len--) {
+			dst[off++] = (byte) (buf >>> 56);
+			buf <<= 8;
+			bits -= 8;
+		}
+		int n = Math.min(len, limit - pos);
+		System.arraycopy(buffer, pos, dst, off, n);
+		pos += n;
+		off += n;
+		len -= n;
+		while (len > 0) {
+			int read = stream.read(dst, off, len);
+			if (read <= 0) throw new IOException("Decompression failed: Error reading bits.");
+			bytesRead += read;
+			off += read;
+			len -= read;
+		}
+	}
+	/**
+	 * Returns the number of buffered bits.
+	 * @return (int)
+	 */
+	public int available() { return bits; }
+	/**
+	 * Returns the number of bytes pulled from the underlying stream so far.
+	 * @return (long)
+	 */
+	public long getBytesRead() { return bytesRead; }
+}
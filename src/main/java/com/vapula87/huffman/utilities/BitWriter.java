@@ -0,0 +1,116 @@
+package com.vapula87.huffman.utilities;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes a most-significant-bit-first bit stream through a 64-bit buffer.<br><br>
+ *
+ * Codes are accumulated in a long and flushed 32 bits at a time into a large byte array,
+ * which is handed to the underlying stream only when it fills up.
+ *
+ * @author Michael Hackett
+ */
+public class BitWriter {
+	private final OutputStream 	stream;
+	private final byte[] 		buffer;
+	private int 				pos = 0, bits = 0;
+	private long 				buf = 0, bytesWritten = 0;
+	/**
+	 * Creates a bit writer with a 1 MB output buffer.
+	 * @param stream (OutputStream)
+	 */
+	public BitWriter(OutputStream stream) { this(stream, 1 << 20); }
+	/**
+	 * Creates a bit writer with the given output buffer size (a multiple of 4).
+	 * @param stream (OutputStream)
+	 * @param bufferSize (int)
+	 */
+	public BitWriter(OutputStream stream, int bufferSize) {
+		this.stream = stream;
+		this.buffer = new byte[bufferSize];
+	}
+	/**
+	 * Appends the low len bits of code, most significant first.
+	 * @param code (long) right-aligned, no bits set above len
+	 * @param len (int) 1 to 64
+	 * @throws IOException
+	 */
+	public void write(long code, int len) throws IOException {
+		if (len > 32) {
+			write(code >>> 32, len - 32);
+			code &= 0xFFFFFFFFL;
+			len = 32;
+		}
+		bits += len;
+		buf |= code << (64 - bits);
+		if (bits >= 32) {
+			if (pos == buffer.length) drain();
+			int word = (int) (buf >>> 32);
+			buffer[pos] = (byte) (word >>> 24);
+			buffer[pos + 1] = (byte) (word >>> 16);
+			buffer[pos + 2] = (byte) (word >>> 8);
+			buffer[pos + 3] = (byte) word;
+			pos += 4;
+			buf <<= 32;
+			bits -= 32;
+		}
+	}
+	/**
+	 * Appends a single bit.
+	 * @param bit (int)
+	 * @throws IOException
+	 */
+	public void writeBit(int bit) throws IOException { write(bit, 1); }
+	/**
+	 * Appends whole bytes in bulk. The stream must be at a byte boundary.
+	 * @param src (byte[])
+	 * @param off (int)
+	 * @param len (int)
+	 * @throws IOException
+	 */
+	public void writeBytes(byte[] src, int off, int len) throws IOException {
+		if ((bits & 7) != 0) throw new IllegalStateException("Not at a byte boundary.");
+		for (; len > 0 && bits > 0; len--) write(src[off++] & 0xFF, 8);
+		while (bits > 0) {
+			if (pos == buffer.length) drain();
+			buffer[pos++] = (byte) (buf >>> 56);
+			buf <<= 8;
+			bits -= 8;
+		}
+		if (len >= buffer.length - pos) {
+			drain();
+			stream.write(src, off, len);
+			bytesWritten += len;
+			return;
+		}
+		System.arraycopy(src, off, buffer, pos, len);
+		pos += len;
+	}
+	/**
+	 * Pads the stream with zero bits up to the next byte boundary and writes out everything buffered.
+	 * @throws IOException
+	 */
+	public void flush() throws IOException {
+		while (bits > 0) {
+			if (pos == buffer.length) drain();
+			buffer[pos++] = (byte) (buf >>> 56);
+			buf <<= 8;
+			bits -= 8;
+		}
+		bits = 0;
+		buf = 0;
+		drain();
+		stream.flush();
+	}
+	private void drain() throws IOException {
+		stream.write(buffer, 0, pos);
+		bytesWritten += pos;
+		pos = 0;
+	}
+	/**
+	 * Returns the number of whole bytes produced so far, including those still buffered.
+	 * @return (long)
+	 */
+	public long getBytesWritten() { return bytesWritten + pos + (bits >>> 3); }
+}
@@ -0,0 +1,171 @@
+package com.vapula87.huffman.utilities;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounded ring buffer of byte blocks between two pipeline stages.<br><br>
+ *
+ * The producer blocks while the ring is full and the consumer while it is empty, so a slow stage
+ * holds back the one feeding it without unbounded buffering. The producer calls {@link #finish()}
+ * after its last block, and {@link #close()} abandons the ring from either side.<br>
+ * The ring records its depth at every put and take and how often each side had to wait:
+ * a ring that is usually full points at the consumer as the bottleneck, one that is usually
+ * empty at the producer.
+ *
+ * @author Michael Hackett
+ */
+public class BlockRing {
+	private final ByteBuffer[] 	slots;
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition 	notEmpty = lock.newCondition(), notFull = lock.newCondition(), drained = lock.newCondition();
+	private int 				head = 0, count = 0, pending = 0, maxDepth = 0;
+	private long 				samples = 0, depthSum = 0, fullWaits = 0, emptyWaits = 0;
+	private boolean 			finished = false, closed = false;
+	/**
+	 * Creates a ring holding up to the given number of blocks.
+	 * @param capacity (int)
+	 */
+	public BlockRing(int capacity) { slots = new ByteBuffer[capacity]; }
+	/**
+	 * Adds a block, waiting while the ring is full.
+	 *
+	 * @param block (ByteBuffer)
+	 * @return (boolean) false if the ring was closed, in which case the caller still owns the block
+	 * @throws InterruptedException
+	 */
+	public boolean put(ByteBuffer block) throws InterruptedException {
+		lock.lock();
+		try {
+			sample();
+			if (count == slots.length && !closed) fullWaits++;
+			while (count == slots.length && !closed) notFull.await();
+			if (closed) return false;
+			slots[(head + count) % slots.length] = block;
+			count++;
+			pending++;
+			maxDepth = Math.max(maxDepth, count);
+			notEmpty.signal();
+			return true;
+		}
+		finally { lock.unlock(); }
+	}
+	/**
+	 * Removes the oldest block, waiting while the ring is empty.
+	 *
+	 * @return (ByteBuffer) the block, or null once the ring is finished and empty, or closed
+	 * @throws InterruptedException
+	 */
+	public ByteBuffer take() throws InterruptedException {
+		lock.lock();
+		try {
+			sample();
+			if (count == 0 && !finished && !closed) emptyWaits++;
+			while (count == 0 && !finished && !closed) notEmpty.await();
+			if (count == 0 || closed) return null;
+			ByteBuffer block = slots[head];
+			slots[head] = null;
+			head = (head + 1) % slots.length;
+			count--;
+			notFull.signal();
+			return block;
+		}
+		finally { lock.unlock(); }
+	}
+	/**
+	 * Marks a taken block as fully processed, for {@link #awaitDrained()}.
+	 */
+	public void complete() {
+		lock.lock();
+		try {
+			if (--pending == 0) drained.signalAll();
+		}
+		finally { lock.unlock(); }
+	}
+	/**
+	 * Waits until every block put so far has been taken and completed, or the ring is closed.
+	 * @throws InterruptedException
+	 */
+	public void awaitDrained() throws InterruptedException {
+		lock.lock();
+		try { while (pending > 0 && !closed) drained.await(); }
+		finally { lock.unlock(); }
+	}
+	/**
+	 * Signals that no more blocks will be put. The consumer still takes the remaining ones.
+	 */
+	public void finish() {
+		lock.lock();
+		try {
+			finished = true;
+			notEmpty.signalAll();
+		}
+		finally { lock.unlock(); }
+	}
+	/**
+	 * Abandons the ring, waking both sides.
+	 *
+	 * @return (List) the blocks still queued, for the caller to release
+	 */
+	public List<ByteBuffer> close() {
+		lock.lock();
+		try {
+			closed = true;
+			List<ByteBuffer> left = new ArrayList<>();
+			for (; count > 0; count--, head = (head + 1) % slots.length) {
+				left.add(slots[head]);
+				slots[head] = null;
+			}
+			notEmpty.signalAll();
+			notFull.signalAll();
+			drained.signalAll();
+			return left;
+		}
+		finally { lock.unlock(); }
+	}
+	private void sample() {
+		samples++;
+		depthSum += count;
+	}
+	public int getCapacity() { return slots.length; }
+	public int getMaxDepth() {
+		lock.lock();
+		try { return maxDepth; }
+		finally { lock.unlock(); }
+	}
+	/**
+	 * Returns the mean number of queued blocks seen by puts and takes.
+	 * @return (double)
+	 */
+	public double getAverageDepth() {
+		lock.lock();
+		try { return samples == 0 ? 0 : (double) depthSum / samples; }
+		finally { lock.unlock(); }
+	}
+	/**
+	 * Returns how many puts found the ring full.
+	 * @return (long)
+	 */
+	public long getFullWaits() {
+		lock.lock();
+		try { return fullWaits; }
+		finally { lock.unlock(); }
+	}
+	/**
+	 * Returns how many takes found the ring empty.
+	 * @return (long)
+	 */
+	public long getEmptyWaits() {
+		lock.lock();
+		try { return emptyWaits; }
+		finally { lock.unlock(); }
+	}
+	@Override
+	public String toString() {
+		return String.format("depth avg %.2f max %d of %d, %d full waits, %d empty waits",
+				getAverageDepth(), getMaxDepth(), getCapacity(), getFullWaits(), getEmptyWaits());
+	}
+}
@@ -0,0 +1,43 @@
+package com.vapula87.huffman.utilities;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Shared pool of 1 MB direct byte buffers for channel I/O.<br><br>
+ *
+ * Direct buffers are expensive to allocate and are only freed by the garbage collector,
+ * so streams borrow them here and hand them back on close.
+ *
+ * @author Michael Hackett
+ */
+public class BufferPool {
+	public static final int 									BUFFER_SIZE = 1 << 20, MAX_POOLED = 64;
+	private static final ConcurrentLinkedQueue<ByteBuffer> 		pool = new ConcurrentLinkedQueue<>();
+	private static final AtomicInteger 							pooled = new AtomicInteger();
+	private BufferPool() { }
+	/**
+	 * Borrows a cleared buffer, allocating one if the pool is empty.
+	 * @return (ByteBuffer)
+	 */
+	public static ByteBuffer acquire() {
+		ByteBuffer buffer = pool.poll();
+		if (buffer == null) return ByteBuffer.allocateDirect(BUFFER_SIZE);
+		pooled.decrementAndGet();
+		buffer.clear();
+		return buffer;
+	}
+	/**
+	 * Returns a buffer to the pool. The caller must not touch it afterwards.
+	 * @param buffer (ByteBuffer)
+	 */
+	public static void release(ByteBuffer buffer) {
+		if (buffer == null || !buffer.isDirect() || buffer.capacity() != BUFFER_SIZE) return;
+		if (pooled.incrementAndGet() > MAX_POOLED) {
+			pooled.decrementAndGet();
+			return;
+		}
+		pool.offer(buffer);
+	}
+}
@@ -0,0 +1,58 @@
+package com.vapula87.huffman.utilities;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * InputStream over a channel, read through a pooled direct buffer.<br><br>
+ *
+ * Every refill is a single bulk channel read of up to 1 MB; single-byte and array reads are
+ * served from the buffer without touching the channel or taking any lock.
+ *
+ * @author Michael Hackett
+ */
+public class ChannelInput extends InputStream {
+	private final ReadableByteChannel 	channel;
+	private ByteBuffer 					buffer;
+	/**
+	 * Wraps the channel. Closing the stream closes the channel.
+	 * @param channel (ReadableByteChannel)
+	 */
+	public ChannelInput(ReadableByteChannel channel) {
+		this.channel = channel;
+		this.buffer = BufferPool.acquire();
+		buffer.limit(0);
+	}
+	@Override
+	public int read() throws IOException {
+		if (!buffer.hasRemaining() && !fill()) return -1;
+		return buffer.get() & 0xFF;
+	}
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (len == 0) return 0;
+		if (!buffer.hasRemaining() && !fill()) return -1;
+		int n = Math.min(len, buffer.remaining());
+		buffer.get(b, off, n);
+		return n;
+	}
+	@Override
+	public int available() { return buffer == null ? 0 : buffer.remaining(); }
+	private boolean fill() throws IOException {
+		if (buffer == null) throw new IOException("Stream closed.");
+		buffer.clear();
+		int n;
+		do { n = channel.read(buffer); } while (n == 0);
+		buffer.flip();
+		return n > 0;
+	}
+	@Override
+	public void close() throws IOException {
+		if (buffer == null) return;
+		BufferPool.release(buffer);
+		buffer = null;
+		channel.close();
+	}
+}
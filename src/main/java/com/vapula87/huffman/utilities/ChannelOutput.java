@@ -0,0 +1,60 @@
+package com.vapula87.huffman.utilities;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * OutputStream over a channel, written through a pooled direct buffer.<br><br>
+ *
+ * Bytes are gathered in a 1 MB direct buffer and handed to the channel in bulk writes only when
+ * it fills up or the stream is flushed.
+ *
+ * @author Michael Hackett
+ */
+public class ChannelOutput extends OutputStream {
+	private final WritableByteChannel 	channel;
+	private ByteBuffer 					buffer;
+	/**
+	 * Wraps the channel. Closing the stream flushes it and closes the channel.
+	 * @param channel (WritableByteChannel)
+	 */
+	public ChannelOutput(WritableByteChannel channel) {
+		this.channel = channel;
+		this.buffer = BufferPool.acquire();
+	}
+	@Override
+	public void write(int b) throws IOException {
+		if (!buffer.hasRemaining()) drain();
+		buffer.put((byte) b);
+	}
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		while (len > 0) {
+			if (!buffer.hasRemaining()) drain();
+			int n = Math.min(len, buffer.remaining());
+			buffer.put(b, off, n);
+			off += n;
+			len -= n;
+		}
+	}
+	@Override
+	public void flush() throws IOException { drain(); }
+	private void drain() throws IOException {
+		if (buffer == null) throw new IOException("Stream closed.");
+		buffer.flip();
+		while (buffer.hasRemaining()) channel.write(buffer);
+		buffer.clear();
+	}
+	@Override
+	public void close() throws IOException {
+		if (buffer == null) return;
+		try { drain(); }
+		finally {
+			BufferPool.release(buffer);
+			buffer = null;
+			channel.close();
+		}
+	}
+}
@@ -0,0 +1,110 @@
+package com.vapula87.huffman.utilities;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * InputStream over a channel, read ahead by its own thread.<br><br>
+ *
+ * The reader thread fills pooled 1 MB direct buffers from the channel and queues them in a
+ * {@link BlockRing}, so disk reads overlap with whatever the consuming thread does with the data.
+ * Buffers are returned to the {@link BufferPool} once consumed. A read error is rethrown to the
+ * consumer after the blocks read before it.
+ *
+ * @author Michael Hackett
+ */
+public class PipelinedInput extends InputStream {
+	public static final int 			DEPTH = 4;
+	private final ReadableByteChannel 	channel;
+	private final BlockRing 			ring = new BlockRing(DEPTH);
+	private final Thread 				reader;
+	private final ThreadUsage 			usage;
+	private volatile IOException 		error;
+	private ByteBuffer 					buffer;
+	private boolean 					closed = false;
+	/**
+	 * Wraps the channel and starts reading. Closing the stream closes the channel.
+	 * @param channel (ReadableByteChannel)
+	 */
+	public PipelinedInput(ReadableByteChannel channel) { this(channel, null); }
+	/**
+	 * Wraps the channel and starts reading. Closing the stream closes the channel.
+	 * @param channel (ReadableByteChannel)
+	 * @param usage (ThreadUsage) receives the reader thread's CPU time and allocations when it ends, or null
+	 */
+	public PipelinedInput(ReadableByteChannel channel, ThreadUsage usage) {
+		this.channel = channel;
+		this.usage = usage;
+		reader = new Thread(this::fill, "huffman-reader");
+		reader.setDaemon(true);
+		reader.start();
+	}
+	/**
+	 * Reader stage: reads whole buffers until the end of the channel.
+	 */
+	private void fill() {
+		try {
+			while (true) {
+				ByteBuffer block = BufferPool.acquire();
+				int n = 0;
+				while (block.hasRemaining() && (n = channel.read(block)) >= 0) { }
+				block.flip();
+				if (!block.hasRemaining() || !ring.put(block)) {
+					BufferPool.release(block);
+					return;
+				}
+				if (n < 0) return;
+			}
+		}
+		catch (IOException e) { error = e; }
+		catch (InterruptedException e) { }
+		finally {
+			if (usage != null) usage.addThread();
+			ring.finish();
+		}
+	}
+	@Override
+	public int read() throws IOException {
+		if ((buffer == null || !buffer.hasRemaining()) && !next()) return -1;
+		return buffer.get() & 0xFF;
+	}
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (len == 0) return 0;
+		if ((buffer == null || !buffer.hasRemaining()) && !next()) return -1;
+		int n = Math.min(len, buffer.remaining());
+		buffer.get(b, off, n);
+		return n;
+	}
+	@Override
+	public int available() { return buffer == null ? 0 : buffer.remaining(); }
+	private boolean next() throws IOException {
+		if (closed) throw new IOException("Stream closed.");
+		BufferPool.release(buffer);
+		buffer = null;
+		try { buffer = ring.take(); }
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Operation interrupted.");
+		}
+		if (buffer == null && error != null) throw error;
+		return buffer != null;
+	}
+	/**
+	 * Returns the queue between the reader thread and the consumer.
+	 * @return (BlockRing)
+	 */
+	public BlockRing getQueue() { return ring; }
+	@Override
+	public void close() throws IOException {
+		if (closed) return;
+		closed = true;
+		BufferPool.release(buffer);
+		buffer = null;
+		for (ByteBuffer block : ring.close()) BufferPool.release(block);
+		reader.interrupt();
+		channel.close();
+	}
+}
@@ -0,0 +1,136 @@
+package com.vapula87.huffman.utilities;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * OutputStream over a channel, written behind by its own thread.<br><br>
+ *
+ * Bytes are gathered in pooled 1 MB direct buffers; each full buffer is queued in a {@link BlockRing}
+ * and written to the channel by the writer thread, so disk writes overlap with producing the next
+ * buffer. {@link #flush()} waits until everything queued has been written. A write error is rethrown
+ * on the producer's next write, flush or close.
+ *
+ * @author Michael Hackett
+ */
+public class PipelinedOutput extends OutputStream {
+	public static final int 			DEPTH = 4;
+	private final WritableByteChannel 	channel;
+	private final BlockRing 			ring = new BlockRing(DEPTH);
+	private final Thread 				writer;
+	private final ThreadUsage 			usage;
+	private volatile IOException 		error;
+	private ByteBuffer 					buffer;
+	private boolean 					closed = false;
+	/**
+	 * Wraps the channel and starts the writer. Closing the stream flushes it and closes the channel.
+	 * @param channel (WritableByteChannel)
+	 */
+	public PipelinedOutput(WritableByteChannel channel) { this(channel, null); }
+	/**
+	 * Wraps the channel and starts the writer. Closing the stream flushes it and closes the channel.
+	 * @param channel (WritableByteChannel)
+	 * @param usage (ThreadUsage) receives the writer thread's CPU time and allocations when it ends, or null
+	 */
+	public PipelinedOutput(WritableByteChannel channel, ThreadUsage usage) {
+		this.channel = channel;
+		this.usage = usage;
+		this.buffer = BufferPool.acquire();
+		writer = new Thread(this::drain, "huffman-writer");
+		writer.setDaemon(true);
+		writer.start();
+	}
+	/**
+	 * Writer stage: writes queued buffers until the ring is finished.
+	 */
+	private void drain() {
+		try {
+			ByteBuffer block;
+			while ((block = ring.take()) != null) {
+				try { while (block.hasRemaining()) channel.write(block); }
+				finally {
+					BufferPool.release(block);
+					ring.complete();
+				}
+			}
+		}
+		catch (IOException e) {
+			error = e;
+			for (ByteBuffer block : ring.close()) BufferPool.release(block);
+		}
+		catch (InterruptedException e) { }
+		finally { if (usage != null) usage.addThread(); }
+	}
+	@Override
+	public void write(int b) throws IOException {
+		if (buffer == null || !buffer.hasRemaining()) handOff();
+		buffer.put((byte) b);
+	}
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		while (len > 0) {
+			if (buffer == null || !buffer.hasRemaining()) handOff();
+			int n = Math.min(len, buffer.remaining());
+			buffer.put(b, off, n);
+			off += n;
+			len -= n;
+		}
+	}
+	@Override
+	public void flush() throws IOException {
+		handOff();
+		try { ring.awaitDrained(); }
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Operation interrupted.");
+		}
+		if (error != null) throw error;
+	}
+	/**
+	 * Queues the current buffer for the writer and starts a new one.
+	 */
+	private void handOff() throws IOException {
+		if (closed || buffer == null) throw new IOException("Stream closed.");
+		if (error != null) throw error;
+		buffer.flip();
+		if (!buffer.hasRemaining()) {
+			buffer.clear();
+			return;
+		}
+		ByteBuffer full = buffer;
+		buffer = null;
+		try {
+			if (!ring.put(full)) {
+				BufferPool.release(full);
+				throw error != null ? error : new IOException("Stream closed.");
+			}
+		}
+		catch (InterruptedException e) {
+			BufferPool.release(full);
+			Thread.currentThread().interrupt();
+			throw new IOException("Operation interrupted.");
+		}
+		buffer = BufferPool.acquire();
+	}
+	/**
+	 * Returns the queue between the producer and the writer thread.
+	 * @return (BlockRing)
+	 */
+	public BlockRing getQueue() { return ring; }
+	@Override
+	public void close() throws IOException {
+		if (closed) return;
+		try { flush(); }
+		finally {
+			closed = true;
+			ring.finish();
+			try { writer.join(); }
+			catch (InterruptedException e) { Thread.currentThread().interrupt(); }
+			BufferPool.release(buffer);
+			buffer = null;
+			channel.close();
+		}
+	}
+}
@@ -0,0 +1,90 @@
+package com.vapula87.huffman.utilities;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.vapula87.huffman.interfaces.IProgressListener;
+/**
+ * Byte counter for progress reporting, kept out of the coding loops.<br><br>
+ *
+ * The engine only adds to the counter once per block, so progress costs one atomic update per block
+ * and no arithmetic per byte. Listeners either poll it or are sent its value at a bounded rate by
+ * a {@link Reporter}, on a shared daemon thread, and only when it has moved. The total may be
+ * unknown, for streams, in which case listeners still receive the bytes done.
+ *
+ * @author Michael Hackett
+ */
+public class ProgressCounter {
+	public static final long 						UNKNOWN = -1;
+	private static final ScheduledExecutorService 	TIMER = Executors.newSingleThreadScheduledExecutor(task -> {
+		Thread thread = new Thread(task, "huffman-progress");
+		thread.setDaemon(true);
+		return thread;
+	});
+	private final AtomicLong 						done = new AtomicLong();
+	private volatile long 							total = UNKNOWN;
+	/**
+	 * Starts counting a new pass.
+	 * @param total (long) bytes the pass will process, or UNKNOWN
+	 */
+	public void reset(long total) {
+		done.set(0);
+		this.total = total;
+	}
+	/**
+	 * Adds the bytes of a finished block. Safe to call from several threads.
+	 * @param bytes (long)
+	 */
+	public void add(long bytes) { done.addAndGet(bytes); }
+	/**
+	 * Sets the bytes done, for a single thread that already keeps a running count.
+	 * @param bytes (long)
+	 */
+	public void set(long bytes) { done.set(bytes); }
+	public long getDone() { return done.get(); }
+	public long getTotal() { return total; }
+	/**
+	 * Returns the fraction done.
+	 * @return (double) between 0 and 1, or -1 if the total is unknown
+	 */
+	public double getFraction() {
+		long expected = total;
+		return expected > 0 ? Math.min(1.0, (double) done.get() / expected) : -1;
+	}
+	/**
+	 * Sends the counter to the listener every period while it moves, until the reporter is closed.
+	 *
+	 * @param listener (IProgressListener)
+	 * @param periodMillis (long)
+	 * @return (Reporter)
+	 */
+	public Reporter report(IProgressListener listener, long periodMillis) { return new Reporter(listener, periodMillis); }
+	/**
+	 * Pushes the counter to one listener until closed. Closing sends the final value.
+	 */
+	public class Reporter implements AutoCloseable {
+		private final IProgressListener 	listener;
+		private final ScheduledFuture<?> 	future;
+		private long 						sent = -1;
+		private boolean 					closed = false;
+		private Reporter(IProgressListener listener, long periodMillis) {
+			this.listener = listener;
+			future = TIMER.scheduleAtFixedRate(this::send, 0, periodMillis, TimeUnit.MILLISECONDS);
+		}
+		private synchronized void send() {
+			long now = done.get();
+			if (closed || now == sent) return;
+			sent = now;
+			listener.update(now, total);
+		}
+		@Override
+		public void close() {
+			future.cancel(false);
+			send();
+			synchronized (this) { closed = true; }
+		}
+	}
+}
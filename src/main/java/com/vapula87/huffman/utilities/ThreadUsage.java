@@ -0,0 +1,51 @@
+package com.vapula87.huffman.utilities;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.atomic.LongAdder;
+/**
+ * CPU time and allocations of work done for an operation on other threads.<br><br>
+ *
+ * A pool task notes {@link #cpuTime()} and {@link #allocated()} when it starts and passes them to {@link #add}
+ * when it ends; a thread that does nothing else adds its whole life with {@link #addThread()}.
+ * Both can be called from any number of threads at once.
+ *
+ * @author Michael Hackett
+ */
+public class ThreadUsage {
+	private static final ThreadMXBean 	THREADS = ManagementFactory.getThreadMXBean();
+	private final LongAdder 			cpu = new LongAdder(), bytes = new LongAdder();
+	/**
+	 * Adds what the calling thread used since the given readings.
+	 *
+	 * @param cpuStart (long) {@link #cpuTime()} when the work started
+	 * @param bytesStart (long) {@link #allocated()} when the work started
+	 */
+	public void add(long cpuStart, long bytesStart) {
+		long cpuEnd = cpuTime(), bytesEnd = allocated();
+		if (cpuStart >= 0 && cpuEnd >= 0) cpu.add(cpuEnd - cpuStart);
+		if (bytesStart >= 0 && bytesEnd >= 0) bytes.add(bytesEnd - bytesStart);
+	}
+	/**
+	 * Adds everything the calling thread has used since it started.
+	 */
+	public void addThread() { add(0, 0); }
+	public long getCpuNanos() { return cpu.sum(); }
+	public long getAllocatedBytes() { return bytes.sum(); }
+	/**
+	 * Returns the CPU time of the calling thread in nanoseconds.
+	 * @return (long) or -1 if the JVM does not report it
+	 */
+	public static long cpuTime() {
+		return THREADS.isCurrentThreadCpuTimeSupported() ? THREADS.getCurrentThreadCpuTime() : -1;
+	}
+	/**
+	 * Returns the bytes the calling thread has allocated.
+	 * @return (long) or -1 if the JVM does not report them
+	 */
+	public static long allocated() {
+		if (THREADS instanceof com.sun.management.ThreadMXBean)
+			return ((com.sun.management.ThreadMXBean) THREADS).getThreadAllocatedBytes(Thread.currentThread().getId());
+		return -1;
+	}
+}